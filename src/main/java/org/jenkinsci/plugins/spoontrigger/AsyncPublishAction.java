@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import lombok.Getter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.File;
+import java.io.IOException;
+
+public class AsyncPublishAction implements RunAction2 {
+
+    static final String LOG_FILE_NAME = "spoon-publish.log";
+
+    @Getter
+    private State state = State.QUEUED;
+    @Getter
+    private long startTime;
+    @Getter
+    private long endTime;
+
+    @Getter
+    private transient Run<?, ?> owner;
+
+    public synchronized boolean isCompleted() {
+        return this.state != State.QUEUED && this.state != State.RUNNING;
+    }
+
+    synchronized void markRunning() {
+        this.state = State.RUNNING;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    synchronized void markCompleted(boolean isSuccessful) {
+        this.state = isSuccessful ? State.SUCCESS : State.FAILURE;
+        this.endTime = System.currentTimeMillis();
+    }
+
+    File getLogFile() {
+        return new File(this.owner.getRootDir(), LOG_FILE_NAME);
+    }
+
+    public void doLog(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        File logFile = this.getLogFile();
+        if (!logFile.exists()) {
+            rsp.sendError(StaplerResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        rsp.setContentType("text/plain;charset=" + this.owner.getCharset().name());
+        rsp.serveFile(req, logFile.toURI().toURL());
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> run) {
+        this.owner = run;
+    }
+
+    @Override
+    public synchronized void onLoad(Run<?, ?> run) {
+        this.owner = run;
+        if (!this.isCompleted()) {
+            this.state = State.INTERRUPTED;
+        }
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Spoon publishing";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "spoonPublishing";
+    }
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        SUCCESS,
+        FAILURE,
+        INTERRUPTED
+    }
+}
@@ -0,0 +1,55 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import com.google.common.collect.Maps;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs publishing work detached from build executors, on a bounded pool per node.
+ */
+final class AsyncPublishingService {
+
+    static final int POOL_SIZE = Integer.getInteger(AsyncPublishingService.class.getName() + ".poolSize", 2);
+    static final int QUEUE_CAPACITY = Integer.getInteger(AsyncPublishingService.class.getName() + ".queueCapacity", 32);
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    private static final AsyncPublishingService INSTANCE = new AsyncPublishingService();
+
+    private final Map<String, ThreadPoolExecutor> executors = Maps.newHashMap();
+
+    private AsyncPublishingService() {
+    }
+
+    static AsyncPublishingService getInstance() {
+        return INSTANCE;
+    }
+
+    boolean submit(String nodeName, Runnable task) {
+        try {
+            this.getExecutor(nodeName).execute(task);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            return false;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor(String nodeName) {
+        ThreadPoolExecutor executor = this.executors.get(nodeName);
+        if (executor == null) {
+            String threadName = String.format("SpoonPublisher.async [%s]", nodeName.isEmpty() ? "master" : nodeName);
+            executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                    new NamingThreadFactory(new DaemonThreadFactory(), threadName),
+                    new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            this.executors.put(nodeName, executor);
+        }
+        return executor;
+    }
+}
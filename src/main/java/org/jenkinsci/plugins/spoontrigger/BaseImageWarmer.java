@@ -0,0 +1,331 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Computer;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.spoontrigger.client.PullCommand;
+import org.jenkinsci.plugins.spoontrigger.client.SpoonClient;
+import org.jenkinsci.plugins.spoontrigger.utils.FileResolver;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pulls the base images referenced by the scripts of Spoon projects onto idle nodes those projects can run on,
+ * so the first build on a fresh node does not spend its time downloading them.
+ */
+@Extension
+public final class BaseImageWarmer extends AsyncPeriodicWork {
+
+    static final int RECURRENCE_MINUTES = Integer.getInteger(BaseImageWarmer.class.getName() + ".recurrenceMinutes", 30);
+    static final int MAX_CONCURRENT_NODES = Integer.getInteger(BaseImageWarmer.class.getName() + ".maxConcurrentNodes", 2);
+    static final int MAX_KILOBYTES_PER_SECOND = Integer.getInteger(BaseImageWarmer.class.getName() + ".maxKilobytesPerSecond", 10 * 1024);
+    static final int REFRESH_HOURS = Integer.getInteger(BaseImageWarmer.class.getName() + ".refreshHours", 24);
+    static final int RETRY_MINUTES = Integer.getInteger(BaseImageWarmer.class.getName() + ".retryMinutes", 60);
+    static final int PULL_TIMEOUT_MINUTES = Integer.getInteger(BaseImageWarmer.class.getName() + ".pullTimeoutMinutes", 30);
+
+    private static final long IDLE_CHECK_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final Object BANDWIDTH_LOCK = new Object();
+
+    private static long bandwidthAvailableMillis;
+
+    private static final Pattern FROM_INSTRUCTION_PATTERN = Pattern.compile("^\\s*from\\s+([^#]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern IMAGE_SEPARATOR_PATTERN = Pattern.compile("[,\\s]+");
+
+    public BaseImageWarmer() {
+        super("Spoon base image warm-up");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(RECURRENCE_MINUTES);
+    }
+
+    @Override
+    protected void execute(final TaskListener listener) throws IOException, InterruptedException {
+        if (MAX_CONCURRENT_NODES <= 0) {
+            return;
+        }
+
+        Map<String, List<SpoonProject>> baseImages = collectBaseImages(listener);
+        if (baseImages.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_NODES,
+                new NamingThreadFactory(new DaemonThreadFactory(), "BaseImageWarmer"));
+        final ExecutorService pullExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_NODES,
+                new NamingThreadFactory(new DaemonThreadFactory(), "BaseImageWarmer pull"));
+        try {
+            Map<String, Future<Void>> pendingNodes = Maps.newLinkedHashMap();
+            for (final Computer computer : Jenkins.getInstance().getComputers()) {
+                final Node node = computer.getNode();
+                if (node == null || !isIdle(computer) || node.getNumExecutors() == 0) {
+                    continue;
+                }
+
+                final List<String> images = selectColdImages(node, baseImages);
+                if (images.isEmpty()) {
+                    continue;
+                }
+
+                pendingNodes.put(node.getNodeName(), executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        warm(node, computer, images, pullExecutor, listener);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Map.Entry<String, Future<Void>> pendingNode : pendingNodes.entrySet()) {
+                try {
+                    pendingNode.getValue().get();
+                } catch (ExecutionException ex) {
+                    ex.getCause().printStackTrace(listener.error("Failed to warm up node (%s)",
+                            ImageGarbageCollector.toDisplayName(pendingNode.getKey())));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            pullExecutor.shutdownNow();
+        }
+    }
+
+    private static Map<String, List<SpoonProject>> collectBaseImages(TaskListener listener) {
+        Map<String, List<SpoonProject>> baseImages = Maps.newTreeMap(String.CASE_INSENSITIVE_ORDER);
+        for (SpoonProject project : Jenkins.getInstance().getAllItems(SpoonProject.class)) {
+            ScriptBuilder builder = project.getBuildersList().get(ScriptBuilder.class);
+            SpoonBuild lastBuild = project.getLastBuild();
+            if (project.isDisabled() || builder == null || builder.getScriptFilePath() == null
+                    || lastBuild == null || lastBuild.getWorkspace() == null) {
+                continue;
+            }
+
+            EnvVars env = lastBuild.getEnv().or(new EnvVars());
+            Optional<FilePath> scriptFile = FileResolver.create()
+                    .env(env).build(lastBuild).listener(listener)
+                    .probingStrategy(FileResolver.Probe.WORKING_DIR, FileResolver.Probe.MODULE, FileResolver.Probe.WORKSPACE)
+                    .resolve(builder.getScriptFilePath());
+            if (!scriptFile.isPresent()) {
+                continue;
+            }
+
+            try {
+                for (String image : parseBaseImages(scriptFile.get().readToString())) {
+                    List<SpoonProject> projects = baseImages.get(image);
+                    if (projects == null) {
+                        projects = Lists.newArrayList();
+                        baseImages.put(image, projects);
+                    }
+                    projects.add(project);
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace(listener.error("Failed to read the script of project (%s)", project.getFullName()));
+            }
+        }
+        return baseImages;
+    }
+
+    static Set<String> parseBaseImages(String script) {
+        Set<String> images = Sets.newLinkedHashSet();
+        for (String line : script.split("\\r?\\n")) {
+            Matcher matcher = FROM_INSTRUCTION_PATTERN.matcher(line);
+            if (!matcher.find()) {
+                continue;
+            }
+
+            for (String image : IMAGE_SEPARATOR_PATTERN.split(matcher.group(1).trim())) {
+                boolean isVariable = image.indexOf('$') >= 0 || image.indexOf('%') >= 0;
+                if (!image.isEmpty() && !isVariable) {
+                    images.add(image);
+                }
+            }
+        }
+        return images;
+    }
+
+    private static List<String> selectColdImages(Node node, Map<String, List<SpoonProject>> baseImages) {
+        long now = System.currentTimeMillis();
+        List<String> coldImages = Lists.newArrayList();
+        for (Map.Entry<String, List<SpoonProject>> baseImage : baseImages.entrySet()) {
+            if (!canAnyRunOn(baseImage.getValue(), node)) {
+                continue;
+            }
+
+            WarmImageRegistry.Entry entry = WarmImageRegistry.getInstance().get(node.getNodeName(), baseImage.getKey());
+            if (entry == null) {
+                coldImages.add(baseImage.getKey());
+                continue;
+            }
+
+            // an image removed to free disk space is not pulled again before a refresh is due, or it would be removed again
+            long ageMillis = now - entry.getPulledMillis();
+            long maxAgeMillis = (entry.isWarm() || entry.isEvicted())
+                    ? TimeUnit.HOURS.toMillis(REFRESH_HOURS) : TimeUnit.MINUTES.toMillis(RETRY_MINUTES);
+            if (ageMillis >= maxAgeMillis) {
+                coldImages.add(baseImage.getKey());
+            }
+        }
+        return coldImages;
+    }
+
+    private static boolean canAnyRunOn(List<SpoonProject> projects, Node node) {
+        for (SpoonProject project : projects) {
+            Label label = project.getAssignedLabel();
+            if ((label == null) ? node.getMode() == Node.Mode.NORMAL : label.contains(node)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIdle(Computer computer) {
+        return computer.isOnline() && computer.isAcceptingTasks() && computer.isIdle();
+    }
+
+    private static void warm(Node node, Computer computer, List<String> images, ExecutorService pullExecutor, TaskListener listener)
+            throws IOException, InterruptedException {
+        String nodeName = node.getNodeName();
+        FilePath rootPath = node.getRootPath();
+        if (rootPath == null) {
+            return;
+        }
+
+        FilePath storagePath = ImageGarbageCollector.getStoragePath(rootPath);
+        final SpoonClient client = ImageGarbageCollector.createClient(node, computer, rootPath, listener);
+        for (final String image : images) {
+            awaitBandwidth();
+            if (!isIdle(computer)) {
+                listener.getLogger().println(String.format("Node (%s) is busy, postponing the warm-up of %d image(s)",
+                        ImageGarbageCollector.toDisplayName(nodeName), images.size() - images.indexOf(image)));
+                return;
+            }
+
+            long freeSpace = storagePath.getUsableDiskSpace();
+            if (freeSpace < ImageGarbageCollector.MIN_FREE_SPACE_BYTES) {
+                listener.getLogger().println(String.format("Node (%s) has only %s of free space left, skipping the warm-up",
+                        ImageGarbageCollector.toDisplayName(nodeName), Functions.humanReadableByteSize(freeSpace)));
+                return;
+            }
+
+            long startMillis = System.currentTimeMillis();
+            Future<?> pull = pullExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    PullCommand.builder().image(image).timeout(TimeUnit.MINUTES.toMillis(PULL_TIMEOUT_MINUTES)).build().run(client);
+                }
+            });
+
+            boolean isPulled;
+            try {
+                isPulled = awaitPull(pull, computer);
+            } catch (ExecutionException ex) {
+                if (ex.getCause().getCause() instanceof InterruptedException) {
+                    listener.getLogger().println(String.format("Pull of image (%s) to node (%s) was interrupted, postponing the warm-up of %d image(s)",
+                            image, ImageGarbageCollector.toDisplayName(nodeName), images.size() - images.indexOf(image)));
+                    return;
+                }
+
+                String failure = ex.getCause().getMessage();
+                WarmImageRegistry.getInstance().markFailed(nodeName, image, failure);
+                listener.error("Failed to pull image (%s) to node (%s): %s", image, ImageGarbageCollector.toDisplayName(nodeName), failure);
+                continue;
+            }
+
+            long pulledBytes = Math.max(0, freeSpace - storagePath.getUsableDiskSpace());
+            reserveBandwidth(pulledBytes, startMillis);
+            if (!isPulled) {
+                listener.getLogger().println(String.format("Node (%s) picked up a build, stopped the pull of image (%s) and postponing the warm-up of %d image(s)",
+                        ImageGarbageCollector.toDisplayName(nodeName), image, images.size() - images.indexOf(image)));
+                return;
+            }
+
+            WarmImageRegistry.getInstance().markWarm(nodeName, image);
+            ImageUsageTracker.getInstance().recordIfAbsent(nodeName, image);
+            listener.getLogger().println(String.format("Pulled image (%s) to node (%s), %s downloaded",
+                    image, ImageGarbageCollector.toDisplayName(nodeName), Functions.humanReadableByteSize(pulledBytes)));
+        }
+    }
+
+    /**
+     * Waits for a pull to finish, stopping it as soon as the node picks up a build. Interrupting the pull kills
+     * the spoon process on the node.
+     *
+     * @return false if the pull was stopped
+     */
+    private static boolean awaitPull(Future<?> pull, Computer computer) throws InterruptedException, ExecutionException {
+        try {
+            while (true) {
+                try {
+                    pull.get(IDLE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                    return true;
+                } catch (TimeoutException ex) {
+                    if (!isIdle(computer)) {
+                        pull.cancel(true);
+                        return false;
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            pull.cancel(true);
+            throw ex;
+        }
+    }
+
+    /**
+     * Spoon does not limit the bandwidth of a pull, so the limit is kept on average across all nodes instead.
+     * Every pull reserves the time its bytes take at the limit and no pull starts before earlier reservations have passed.
+     */
+    private static void awaitBandwidth() throws InterruptedException {
+        if (MAX_KILOBYTES_PER_SECOND <= 0) {
+            return;
+        }
+
+        while (true) {
+            long waitMillis;
+            synchronized (BANDWIDTH_LOCK) {
+                waitMillis = bandwidthAvailableMillis - System.currentTimeMillis();
+            }
+            if (waitMillis <= 0) {
+                return;
+            }
+            Thread.sleep(waitMillis);
+        }
+    }
+
+    private static void reserveBandwidth(long pulledBytes, long startMillis) {
+        if (MAX_KILOBYTES_PER_SECOND <= 0) {
+            return;
+        }
+
+        long reservedMillis = pulledBytes * 1000 / (MAX_KILOBYTES_PER_SECOND * 1024L);
+        synchronized (BANDWIDTH_LOCK) {
+            bandwidthAvailableMillis = Math.max(bandwidthAvailableMillis, startMillis) + reservedMillis;
+        }
+    }
+}
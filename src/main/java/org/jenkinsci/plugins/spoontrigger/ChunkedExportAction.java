@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import hudson.Functions;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import lombok.Getter;
+import org.jenkinsci.plugins.spoontrigger.storage.ChunkStore;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Describes an image exported by {@link ExportPublisher} into the {@link ChunkStore} and rebuilds it on download.
+ */
+public class ChunkedExportAction implements RunAction2 {
+
+    static final String URL_NAME_PREFIX = "spoonChunkedExport-";
+
+    @Getter
+    private final String fileName;
+    @Getter
+    private final long size;
+    @Getter
+    private final int chunkCount;
+    @Getter
+    private final int newChunkCount;
+    @Getter
+    private final long newBytes;
+
+    @Getter
+    private transient Run<?, ?> owner;
+
+    public ChunkedExportAction(String fileName, long size, int chunkCount, int newChunkCount, long newBytes) {
+        this.fileName = fileName;
+        this.size = size;
+        this.chunkCount = chunkCount;
+        this.newChunkCount = newChunkCount;
+        this.newBytes = newBytes;
+    }
+
+    public String getHumanReadableSize() {
+        return Functions.humanReadableByteSize(this.size);
+    }
+
+    public String getHumanReadableNewBytes() {
+        return Functions.humanReadableByteSize(this.newBytes);
+    }
+
+    public void doDownload(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        this.owner.checkPermission(Run.ARTIFACTS);
+
+        rsp.setContentType("application/octet-stream");
+        rsp.setHeader("Content-Disposition", "attachment; filename=\"" + this.fileName + "\"");
+        rsp.setHeader("Content-Length", Long.toString(this.size));
+
+        OutputStream out = rsp.getOutputStream();
+        try {
+            ChunkStore.getInstance().restore(this.owner.getExternalizableId(), this.fileName, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> run) {
+        this.owner = run;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> run) {
+        this.owner = run;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Exported Spoon image";
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME_PREFIX + this.fileName;
+    }
+}
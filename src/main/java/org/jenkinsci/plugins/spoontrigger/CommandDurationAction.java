@@ -0,0 +1,23 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import hudson.model.InvisibleAction;
+
+import java.util.Map;
+
+public class CommandDurationAction extends InvisibleAction {
+
+    private final Map<String, Long> durations = Maps.newHashMap();
+
+    synchronized void record(String command, long durationMillis) {
+        Long previousDuration = this.durations.get(command);
+        if (previousDuration == null || previousDuration < durationMillis) {
+            this.durations.put(command, durationMillis);
+        }
+    }
+
+    public synchronized Optional<Long> getDuration(String command) {
+        return Optional.fromNullable(this.durations.get(command));
+    }
+}
@@ -0,0 +1,65 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import hudson.model.Run;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Derives spoon command timeouts from the durations the same command took in earlier builds of a project.
+ * The timeout is a multiple of a high percentile of recent durations, bounded below; without enough history
+ * a configurable default applies.
+ */
+public final class CommandHistory {
+
+    static final int SAMPLE_BUILDS = Integer.getInteger(CommandHistory.class.getName() + ".sampleBuilds", 30);
+    static final int MIN_SAMPLES = Integer.getInteger(CommandHistory.class.getName() + ".minSamples", 5);
+    static final int PERCENTILE = Integer.getInteger(CommandHistory.class.getName() + ".percentile", 95);
+    static final int MULTIPLIER = Integer.getInteger(CommandHistory.class.getName() + ".multiplier", 3);
+    static final long MIN_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(CommandHistory.class.getName() + ".minTimeoutMinutes", 15));
+    static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(CommandHistory.class.getName() + ".defaultTimeoutMinutes", 4 * 60));
+
+    private CommandHistory() {
+    }
+
+    public static void record(SpoonBuild build, String command, long durationMillis) {
+        CommandDurationAction action;
+        synchronized (build) {
+            action = build.getAction(CommandDurationAction.class);
+            if (action == null) {
+                action = new CommandDurationAction();
+                build.addAction(action);
+            }
+        }
+        action.record(command, durationMillis);
+    }
+
+    public static long getTimeoutMillis(SpoonBuild build, String command) {
+        List<Long> durations = Lists.newArrayList();
+        Run<?, ?> previousBuild = build.getPreviousBuild();
+        for (int sampled = 0; previousBuild != null && sampled < SAMPLE_BUILDS; ++sampled) {
+            CommandDurationAction action = previousBuild.getAction(CommandDurationAction.class);
+            if (action != null) {
+                Optional<Long> duration = action.getDuration(command);
+                if (duration.isPresent()) {
+                    durations.add(duration.get());
+                }
+            }
+            previousBuild = previousBuild.getPreviousBuild();
+        }
+
+        if (durations.size() < MIN_SAMPLES) {
+            return DEFAULT_TIMEOUT_MILLIS;
+        }
+
+        Collections.sort(durations);
+        int percentileIndex = (int) Math.ceil(PERCENTILE / 100.0 * durations.size()) - 1;
+        long percentileMillis = durations.get(Math.max(0, Math.min(percentileIndex, durations.size() - 1)));
+        return Math.max(MIN_TIMEOUT_MILLIS, percentileMillis * MULTIPLIER);
+    }
+}
@@ -0,0 +1,61 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.spoontrigger.git.PushCause;
+
+import javax.annotation.Nullable;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class DeliveryCache {
+
+    static final int MAX_SIZE = Integer.getInteger(DeliveryCache.class.getName() + ".maxSize", 10000);
+    static final int EXPIRE_AFTER_MINUTES = Integer.getInteger(DeliveryCache.class.getName() + ".expireAfterMinutes", 60);
+
+    private final Cache<String, Boolean> seenDeliveries;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    DeliveryCache() {
+        this.seenDeliveries = CacheBuilder.newBuilder()
+                .maximumSize(MAX_SIZE)
+                .expireAfterWrite(EXPIRE_AFTER_MINUTES, TimeUnit.MINUTES)
+                .build();
+    }
+
+    static String toKey(@Nullable String deliveryId, PushCause cause) {
+        if (deliveryId != null) {
+            return "delivery:" + deliveryId;
+        }
+
+        return String.format("push:%s#%s@%s", cause.getRepository().getUrl().toLowerCase(Locale.ROOT),
+                cause.getBranch().getName(), cause.getBranch().getHead());
+    }
+
+    boolean markSeen(String key) {
+        Boolean previous = this.seenDeliveries.asMap().putIfAbsent(key, Boolean.TRUE);
+        if (previous == null) {
+            this.missCount.incrementAndGet();
+            return true;
+        }
+
+        this.hitCount.incrementAndGet();
+        return false;
+    }
+
+    void forget(String key) {
+        this.seenDeliveries.invalidate(key);
+    }
+
+    JSONObject getStatistics() {
+        JSONObject statistics = new JSONObject();
+        statistics.put("size", this.seenDeliveries.size());
+        statistics.put("maxSize", MAX_SIZE);
+        statistics.put("hits", this.hitCount.get());
+        statistics.put("misses", this.missCount.get());
+        return statistics;
+    }
+}
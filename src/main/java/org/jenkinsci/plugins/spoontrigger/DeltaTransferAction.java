@@ -0,0 +1,69 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import hudson.Functions;
+import hudson.model.Action;
+import lombok.Getter;
+
+import javax.annotation.Nullable;
+
+/**
+ * Records how much data crossed the channel when {@link ExportPublisher} transferred an image as a delta
+ * against the image exported by an earlier build.
+ */
+public class DeltaTransferAction implements Action {
+
+    @Getter
+    private final String fileName;
+    @Getter
+    private final long totalBytes;
+    @Getter
+    private final long sentBytes;
+    @Getter
+    private final long signatureBytes;
+    @Getter
+    private final long literalBytes;
+    @Nullable
+    @Getter
+    private final Integer basisBuildNumber;
+
+    public DeltaTransferAction(String fileName, long totalBytes, long sentBytes, long signatureBytes, long literalBytes,
+                               @Nullable Integer basisBuildNumber) {
+        this.fileName = fileName;
+        this.totalBytes = totalBytes;
+        this.sentBytes = sentBytes;
+        this.signatureBytes = signatureBytes;
+        this.literalBytes = literalBytes;
+        this.basisBuildNumber = basisBuildNumber;
+    }
+
+    public String getTotalSize() {
+        return Functions.humanReadableByteSize(this.totalBytes);
+    }
+
+    public String getSentSize() {
+        return Functions.humanReadableByteSize(this.sentBytes);
+    }
+
+    public String getSignatureSize() {
+        return Functions.humanReadableByteSize(this.signatureBytes);
+    }
+
+    public String getLiteralSize() {
+        return Functions.humanReadableByteSize(this.literalBytes);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Spoon image delta transfer";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+}
@@ -0,0 +1,214 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.CountingOutputStream;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.BuildListener;
+import hudson.remoting.Channel;
+import hudson.remoting.RemoteOutputStream;
+import hudson.remoting.VirtualChannel;
+import jenkins.model.ArtifactManager;
+import jenkins.model.StandardArtifactManager;
+import jenkins.security.MasterToSlaveFileCallable;
+import lombok.Data;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.jenkinsci.plugins.spoontrigger.Messages.REQUIRE_NOT_NULL_S;
+
+/**
+ * Archives an exported image, compressed, through the artifact manager of a build.
+ * With the standard artifact manager the image is read once: it is compressed and hashed on the node while the compressed bytes
+ * are sent to the master, which writes them to a temporary file in the artifacts directory and moves it into place once the transfer
+ * is complete. Other artifact managers receive a compressed copy written next to the image on the node.
+ */
+final class ExportArchiver {
+
+    static final String IMAGE_EXTENSION = ".svm";
+    static final String ARCHIVE_EXTENSION = ".gz";
+    static final int COMPRESSION_LEVEL = Integer.getInteger(ExportArchiver.class.getName() + ".compressionLevel", Deflater.BEST_SPEED);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private ExportArchiver() {
+    }
+
+    static String toImageFileName(String image) {
+        return image.replaceAll("[^A-Za-z0-9._-]", "_") + IMAGE_EXTENSION;
+    }
+
+    static String toArtifactName(String image) {
+        return toImageFileName(image) + ARCHIVE_EXTENSION;
+    }
+
+    static ExportedImageAction archive(SpoonBuild build, FilePath source, String artifactName, Launcher launcher, BuildListener listener)
+            throws IOException, InterruptedException {
+        checkArgument(source != null, REQUIRE_NOT_NULL_S, "source");
+        checkArgument(artifactName != null, REQUIRE_NOT_NULL_S, "artifactName");
+
+        ArtifactManager artifactManager = build.pickArtifactManager();
+        if (artifactManager instanceof StandardArtifactManager) {
+            return archiveToArtifactsDir(build, source, artifactName);
+        }
+
+        FilePath archive = source.sibling(artifactName);
+        ArchiveResult result = source.act(new FileArchiveCallable(archive.getRemote()));
+        artifactManager.archive(archive.getParent(), launcher, listener, ImmutableMap.of(artifactName, artifactName));
+        return toAction(artifactName, result);
+    }
+
+    private static ExportedImageAction archiveToArtifactsDir(SpoonBuild build, FilePath source, String artifactName)
+            throws IOException, InterruptedException {
+        File artifactsDir = build.getArtifactsDir();
+        if (!artifactsDir.isDirectory() && !artifactsDir.mkdirs()) {
+            throw new IOException(String.format("Failed to create artifacts directory (%s)", artifactsDir));
+        }
+
+        File target = new File(artifactsDir, artifactName);
+        File temporary = new File(artifactsDir, artifactName + TEMPORARY_SUFFIX);
+        FileOutputStream out = new FileOutputStream(temporary);
+        boolean moved = false;
+        try {
+            ArchiveResult result;
+            try {
+                result = source.act(new ArchiveCallable(new RemoteOutputStream(new CloseShieldOutputStream(out))));
+                syncIO(source.getChannel());
+                out.flush();
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+
+            if (temporary.length() != result.getArchiveBytes()) {
+                throw new IOException(String.format("Transfer of %s is incomplete: received %d of %d bytes",
+                        artifactName, temporary.length(), result.getArchiveBytes()));
+            }
+
+            if (target.exists() && !target.delete()) {
+                throw new IOException(String.format("Failed to replace existing artifact (%s)", target));
+            }
+            if (!temporary.renameTo(target)) {
+                throw new IOException(String.format("Failed to move %s to %s", temporary, target));
+            }
+            moved = true;
+
+            return toAction(artifactName, result);
+        } finally {
+            if (!moved && temporary.exists() && !temporary.delete()) {
+                temporary.deleteOnExit();
+            }
+        }
+    }
+
+    private static ExportedImageAction toAction(String artifactName, ArchiveResult result) {
+        final boolean compressed = true;
+        return new ExportedImageAction(artifactName, result.getArchiveSha256(), result.getArchiveBytes(),
+                result.getImageSha256(), result.getImageBytes(), compressed);
+    }
+
+    private static void syncIO(VirtualChannel channel) throws InterruptedException {
+        if (channel instanceof Channel) {
+            ((Channel) channel).syncLocalIO();
+        }
+    }
+
+    private static MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(DIGEST_ALGORITHM + " is not supported", ex);
+        }
+    }
+
+    @Data
+    private static final class ArchiveResult implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String imageSha256;
+        private final long imageBytes;
+        private final String archiveSha256;
+        private final long archiveBytes;
+    }
+
+    private static final class ArchiveCallable extends MasterToSlaveFileCallable<ArchiveResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final OutputStream out;
+
+        ArchiveCallable(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public ArchiveResult invoke(File source, VirtualChannel channel) throws IOException, InterruptedException {
+            return compress(source, this.out);
+        }
+    }
+
+    private static final class FileArchiveCallable extends MasterToSlaveFileCallable<ArchiveResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String targetPath;
+
+        FileArchiveCallable(String targetPath) {
+            this.targetPath = targetPath;
+        }
+
+        @Override
+        public ArchiveResult invoke(File source, VirtualChannel channel) throws IOException, InterruptedException {
+            return compress(source, new FileOutputStream(this.targetPath));
+        }
+    }
+
+    /**
+     * Compresses the source into the stream and closes it, hashing both the source and the compressed bytes.
+     */
+    private static ArchiveResult compress(File source, OutputStream out) throws IOException, InterruptedException {
+        MessageDigest imageDigest = createDigest();
+        MessageDigest archiveDigest = createDigest();
+
+        CountingOutputStream archiveStream = new CountingOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        GZIPOutputStream compressed = new GZIPOutputStream(new DigestOutputStream(archiveStream, archiveDigest), BUFFER_SIZE) {
+            {
+                this.def.setLevel(COMPRESSION_LEVEL);
+            }
+        };
+
+        long imageBytes = 0;
+        InputStream in = new FileInputStream(source);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                imageDigest.update(buffer, 0, read);
+                compressed.write(buffer, 0, read);
+                imageBytes += read;
+            }
+            compressed.finish();
+        } finally {
+            in.close();
+            compressed.close();
+        }
+
+        return new ArchiveResult(Util.toHexString(imageDigest.digest()), imageBytes,
+                Util.toHexString(archiveDigest.digest()), archiveStream.getCount());
+    }
+}
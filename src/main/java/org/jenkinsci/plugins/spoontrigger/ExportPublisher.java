@@ -1,5 +1,7 @@
 package org.jenkinsci.plugins.spoontrigger;
 
+import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.google.common.base.Optional;
 import com.google.common.reflect.TypeToken;
 import hudson.*;
@@ -7,32 +9,87 @@ import hudson.model.*;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Publisher;
 import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import hudson.util.Secret;
+import jenkins.model.StandardArtifactManager;
 import lombok.Getter;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
 import org.jenkinsci.plugins.spoontrigger.client.ExportCommand;
 import org.jenkinsci.plugins.spoontrigger.client.SpoonClient;
+import org.jenkinsci.plugins.spoontrigger.storage.BlockSignatures;
+import org.jenkinsci.plugins.spoontrigger.storage.ChunkManifest;
+import org.jenkinsci.plugins.spoontrigger.storage.ChunkStore;
+import org.jenkinsci.plugins.spoontrigger.storage.DeltaTransfer;
+import org.jenkinsci.plugins.spoontrigger.storage.MultipartUpload;
+import org.jenkinsci.plugins.spoontrigger.storage.ObjectStoreClient;
 import org.jenkinsci.plugins.spoontrigger.utils.AutoCompletion;
+import org.jenkinsci.plugins.spoontrigger.utils.Credentials;
 import org.jenkinsci.plugins.spoontrigger.utils.FileResolver;
 import org.jenkinsci.plugins.spoontrigger.validation.*;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
 
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
 
 import static com.google.common.base.Preconditions.checkState;
 import static org.jenkinsci.plugins.spoontrigger.Messages.*;
 
 public class ExportPublisher extends SpoonBasePublisher {
 
+    static final String DEFAULT_REGION = "us-east-1";
+    static final int DELTA_BASIS_SEARCH_DEPTH = Integer.getInteger(ExportPublisher.class.getName() + ".deltaBasisSearchDepth", 10);
+
+    private static final String SIGNATURES_DIR = "spoon-delta";
+    private static final String SIGNATURES_EXTENSION = ".sig";
+    private static final String TEMP_DIR = "spoon-export";
+
+    @Nullable
+    private final ExportDestination destination;
     @Getter
     private final String outputFile;
     @Nullable
-    private transient FilePath runtimeOutputFile;
+    @Getter
+    private final String endpoint;
+    @Nullable
+    @Getter
+    private final String region;
+    @Nullable
+    @Getter
+    private final String bucket;
+    @Nullable
+    @Getter
+    private final String objectKey;
+    @Nullable
+    @Getter
+    private final String credentialsId;
+    @Getter
+    private final boolean resumeUpload;
 
     @DataBoundConstructor
-    public ExportPublisher(String outputFile) {
+    public ExportPublisher(@Nullable ExportDestination destination, String outputFile,
+                           @Nullable String endpoint, @Nullable String region, @Nullable String bucket,
+                           @Nullable String objectKey, @Nullable String credentialsId, boolean resumeUpload) {
+        this.destination = (destination == null) ? ExportDestination.FILE : destination;
         this.outputFile = Util.fixEmptyAndTrim(outputFile);
+        this.endpoint = Util.fixEmptyAndTrim(endpoint);
+        this.region = Util.fixEmptyAndTrim(region);
+        this.bucket = Util.fixEmptyAndTrim(bucket);
+        this.objectKey = Util.fixEmptyAndTrim(objectKey);
+        this.credentialsId = Util.fixEmptyAndTrim(credentialsId);
+        this.resumeUpload = resumeUpload;
+    }
+
+    public ExportDestination getDestination() {
+        return (this.destination == null) ? ExportDestination.FILE : this.destination;
     }
 
     private static IllegalStateException onFailedResolveOutputFile(String filePath, Exception ex) {
@@ -41,19 +98,215 @@ public class ExportPublisher extends SpoonBasePublisher {
     }
 
     @Override
-    public void beforePublish(SpoonBuild build, BuildListener listener) throws IllegalStateException {
-        super.beforePublish(build, listener);
+    public String beforePublish(SpoonBuild build, BuildListener listener) throws IllegalStateException {
+        String image = super.beforePublish(build, listener);
 
-        this.runtimeOutputFile = this.resolveOutputFile(build, listener);
+        this.getDestination().validate(this, build, listener);
+        return image;
     }
 
     @Override
-    public void publish(AbstractBuild<?, ?> abstractBuild, Launcher launcher, BuildListener listener) throws IllegalStateException {
-        SpoonClient client = super.createClient(abstractBuild, launcher, listener);
-        ExportCommand exportCmd = this.createExportCommand();
+    public void publish(AbstractBuild<?, ?> abstractBuild, String image, Launcher launcher, BuildListener listener) throws IllegalStateException {
+        this.getDestination().export(this, (SpoonBuild) abstractBuild, image, launcher, listener);
+    }
+
+    private void exportToFile(SpoonBuild build, String image, Launcher launcher, BuildListener listener) {
+        FilePath outputFilePath = this.resolveOutputFile(build, listener);
+        SpoonClient client = super.createClient(build, launcher, listener);
+        ExportCommand exportCmd = this.createExportCommand(outputFilePath, image);
         exportCmd.run(client);
     }
 
+    private void exportToArchive(SpoonBuild build, String image, Launcher launcher, BuildListener listener) throws IOException, InterruptedException {
+        FilePath tempDir = createTempDir(build);
+        try {
+            FilePath exportFile = this.exportToTempDir(tempDir, build, image, launcher, listener);
+
+            String artifactName = ExportArchiver.toArtifactName(image);
+            listener.getLogger().println(String.format("Archiving image %s as %s", image, artifactName));
+
+            ExportedImageAction action = ExportArchiver.archive(build, exportFile, artifactName, launcher, listener);
+            build.addAction(action);
+            listener.getLogger().println(String.format("Archived %s (%s, SHA-256 %s)", artifactName, action.getHumanReadableSize(), action.getSha256()));
+        } finally {
+            tempDir.deleteRecursive();
+        }
+    }
+
+    private void exportToChunkStore(SpoonBuild build, String image, Launcher launcher, BuildListener listener) throws IOException, InterruptedException {
+        FilePath tempDir = createTempDir(build);
+        try {
+            FilePath exportFile = this.exportToTempDir(tempDir, build, image, launcher, listener);
+
+            String fileName = ExportArchiver.toImageFileName(image);
+            listener.getLogger().println(String.format("Storing image %s in the chunk store", image));
+
+            ChunkStore.IngestResult result;
+            InputStream in = exportFile.read();
+            try {
+                result = ChunkStore.getInstance().ingest(build.getExternalizableId(), fileName, in);
+            } finally {
+                in.close();
+            }
+
+            ChunkManifest manifest = result.getManifest();
+            ChunkedExportAction action = new ChunkedExportAction(fileName, manifest.getSize(), manifest.getChunks().size(),
+                    result.getNewChunkCount(), result.getNewBytes());
+            build.addAction(action);
+            listener.getLogger().println(String.format("Stored %s as %d chunks, %d new (%s)", fileName, action.getChunkCount(),
+                    action.getNewChunkCount(), action.getHumanReadableNewBytes()));
+        } finally {
+            tempDir.deleteRecursive();
+        }
+    }
+
+    private void exportWithDeltaTransfer(SpoonBuild build, String image, Launcher launcher, BuildListener listener) throws IOException, InterruptedException {
+        // the delta is rebuilt against the image archived by an earlier build, so both must be in the artifacts directory
+        checkState(build.pickArtifactManager() instanceof StandardArtifactManager,
+                "Delta transfer requires artifacts to be kept on the master, which the artifact manager of this build does not do. Use the archive destination instead");
+
+        FilePath tempDir = createTempDir(build);
+        try {
+            FilePath exportFile = this.exportToTempDir(tempDir, build, image, launcher, listener);
+
+            String fileName = ExportArchiver.toImageFileName(image);
+            File artifactsDir = build.getArtifactsDir();
+            if (!artifactsDir.isDirectory() && !artifactsDir.mkdirs()) {
+                throw new IOException(String.format("Failed to create artifacts directory (%s)", artifactsDir));
+            }
+
+            SpoonBuild basisBuild = findDeltaBasis(build, fileName);
+            File basis = null;
+            BlockSignatures basisSignatures = null;
+            if (basisBuild != null) {
+                basis = new File(basisBuild.getArtifactsDir(), fileName);
+                basisSignatures = loadSignatures(basisBuild, fileName, basis, listener);
+                listener.getLogger().println(String.format("Transferring %s as a delta against build #%d", fileName, basisBuild.getNumber()));
+            } else {
+                listener.getLogger().println(String.format("Transferring %s in full, no earlier export of the project was found", fileName));
+            }
+
+            DeltaTransfer.Result result = DeltaTransfer.transfer(exportFile, tempDir.child("image.delta"), basis, basisSignatures,
+                    new File(artifactsDir, fileName));
+            saveSignatures(build, fileName, result.getSignatures(), listener);
+
+            DeltaTransferAction transferAction = new DeltaTransferAction(fileName, result.getTotalBytes(), result.getSentBytes(),
+                    result.getSignatureBytes(), result.getLiteralBytes(), (basisBuild == null) ? null : basisBuild.getNumber());
+            build.addAction(transferAction);
+            final boolean compressed = false;
+            build.addAction(new ExportedImageAction(fileName, result.getSha256(), result.getTotalBytes(), result.getSha256(), result.getTotalBytes(), compressed));
+            listener.getLogger().println(String.format("Archived %s: %s of %s sent (SHA-256 %s)", fileName,
+                    transferAction.getSentSize(), transferAction.getTotalSize(), result.getSha256()));
+        } finally {
+            tempDir.deleteRecursive();
+        }
+    }
+
+    @Nullable
+    private static SpoonBuild findDeltaBasis(SpoonBuild build, String fileName) {
+        SpoonBuild candidate = build.getPreviousBuild();
+        for (int depth = 0; candidate != null && depth < DELTA_BASIS_SEARCH_DEPTH; ++depth) {
+            for (DeltaTransferAction action : candidate.getActions(DeltaTransferAction.class)) {
+                if (action.getFileName().equals(fileName) && new File(candidate.getArtifactsDir(), fileName).isFile()) {
+                    return candidate;
+                }
+            }
+            candidate = candidate.getPreviousBuild();
+        }
+        return null;
+    }
+
+    private static File getSignaturesFile(SpoonBuild build, String fileName) {
+        return new File(new File(build.getRootDir(), SIGNATURES_DIR), fileName + SIGNATURES_EXTENSION);
+    }
+
+    private static BlockSignatures loadSignatures(SpoonBuild basisBuild, String fileName, File basis, TaskListener listener) throws IOException {
+        File signaturesFile = getSignaturesFile(basisBuild, fileName);
+        if (signaturesFile.isFile()) {
+            try {
+                BlockSignatures signatures = BlockSignatures.read(signaturesFile);
+                if (signatures.getBlockSize() == BlockSignatures.DEFAULT_BLOCK_SIZE) {
+                    return signatures;
+                }
+            } catch (IOException ex) {
+                listener.getLogger().println(String.format("Failed to read block signatures from %s, computing them again: %s", signaturesFile, ex.getMessage()));
+            }
+        }
+        return BlockSignatures.compute(basis, BlockSignatures.DEFAULT_BLOCK_SIZE);
+    }
+
+    private static void saveSignatures(SpoonBuild build, String fileName, BlockSignatures signatures, TaskListener listener) {
+        File signaturesFile = getSignaturesFile(build, fileName);
+        try {
+            File signaturesDir = signaturesFile.getParentFile();
+            if (!signaturesDir.isDirectory() && !signaturesDir.mkdirs()) {
+                throw new IOException(String.format("Failed to create directory (%s)", signaturesDir));
+            }
+            signatures.write(signaturesFile);
+        } catch (IOException ex) {
+            listener.getLogger().println(String.format("Failed to save block signatures to %s, the next transfer computes them again: %s", signaturesFile, ex.getMessage()));
+        }
+    }
+
+    private void exportToObjectStore(SpoonBuild build, String image, Launcher launcher, BuildListener listener) throws IOException, InterruptedException {
+        checkState(this.endpoint != null, REQUIRE_NOT_NULL_OR_EMPTY_S, "endpoint");
+        checkState(this.bucket != null, REQUIRE_NOT_NULL_OR_EMPTY_S, "bucket");
+        checkState(this.credentialsId != null, REQUIRE_NOT_NULL_OR_EMPTY_S, "credentials");
+
+        Optional<StandardUsernamePasswordCredentials> credentials = Credentials.lookupById(
+                StandardUsernamePasswordCredentials.class, build.getProject(), this.credentialsId);
+        checkState(credentials.isPresent(), "Cannot find any credentials with id (%s)", this.credentialsId);
+
+        String key = this.resolveObjectKey(build, ExportArchiver.toImageFileName(image));
+        ObjectStoreClient client = new ObjectStoreClient(this.endpoint, (this.region == null) ? DEFAULT_REGION : this.region,
+                credentials.get().getUsername(), Secret.toString(credentials.get().getPassword()));
+
+        FilePath tempDir = createTempDir(build);
+        try {
+            FilePath exportFile = this.exportToTempDir(tempDir, build, image, launcher, listener);
+
+            String url = String.format("%s/%s/%s", this.endpoint, this.bucket, key);
+            listener.getLogger().println(String.format("Uploading image %s to %s", image, url));
+
+            // only a key that stays the same across builds lets the next build resume a failed upload
+            boolean resumable = this.resumeUpload && this.objectKey != null;
+            MultipartUpload.Result result = MultipartUpload.upload(exportFile, client, this.bucket, key, resumable, listener);
+            ObjectStoreExportAction action = new ObjectStoreExportAction(url, result.getETag(), result.getSha256(), result.getSize(),
+                    result.getPartCount(), result.getResumedPartCount(), result.getRetryCount());
+            build.addAction(action);
+            listener.getLogger().println(String.format("Uploaded %s (%s in %d parts, SHA-256 %s)", url, action.getHumanReadableSize(),
+                    action.getPartCount(), action.getSha256()));
+        } finally {
+            tempDir.deleteRecursive();
+        }
+    }
+
+    private String resolveObjectKey(SpoonBuild build, String fileName) {
+        if (this.objectKey == null) {
+            return String.format("%s/%d/%s", build.getProject().getFullName(), build.getNumber(), fileName);
+        }
+
+        Optional<EnvVars> env = build.getEnv();
+        checkState(env.isPresent(), REQUIRE_PRESENT_S, "build environment variables");
+
+        String key = env.get().expand(this.objectKey);
+        return key.startsWith("/") ? key.substring(1) : key;
+    }
+
+    private static FilePath createTempDir(SpoonBuild build) throws IOException, InterruptedException {
+        FilePath exportDir = getNodeRoot(build).child(TEMP_DIR);
+        exportDir.mkdirs();
+
+        return exportDir.createTempDir("spoon-export", null);
+    }
+
+    private FilePath exportToTempDir(FilePath tempDir, SpoonBuild build, String image, Launcher launcher, BuildListener listener) {
+        FilePath exportFile = tempDir.child("image" + ExportArchiver.IMAGE_EXTENSION);
+        SpoonClient client = super.createClient(build, launcher, listener);
+        this.createExportCommand(exportFile, image).run(client);
+        return exportFile;
+    }
+
     private FilePath resolveOutputFile(SpoonBuild build, TaskListener listener) throws IllegalStateException {
         checkState(this.outputFile != null, REQUIRE_NOT_NULL_OR_EMPTY_S, "output file");
 
@@ -80,8 +333,98 @@ public class ExportPublisher extends SpoonBasePublisher {
         return new FilePath(outputFile);
     }
 
-    private ExportCommand createExportCommand() {
-        return ExportCommand.builder().outputFile(this.runtimeOutputFile).image(this.getImageName().get()).build();
+    private ExportCommand createExportCommand(FilePath outputFile, String image) {
+        return ExportCommand.builder().outputFile(outputFile).image(image).build();
+    }
+
+    private static IllegalStateException onFailedExport(String image, Exception ex) {
+        String msg = String.format("Failed to export image (%s)", image);
+        return new IllegalStateException(msg, ex);
+    }
+
+    private enum ExportDestination {
+        FILE {
+            @Override
+            void validate(ExportPublisher publisher, SpoonBuild build, BuildListener listener) {
+                checkState(publisher.getOutputFile() != null, REQUIRE_NOT_NULL_OR_EMPTY_S, "output file");
+            }
+
+            @Override
+            void export(ExportPublisher publisher, SpoonBuild build, String image, Launcher launcher, BuildListener listener) {
+                publisher.exportToFile(build, image, launcher, listener);
+            }
+        },
+        ARCHIVE {
+            @Override
+            void validate(ExportPublisher publisher, SpoonBuild build, BuildListener listener) {
+            }
+
+            @Override
+            void export(ExportPublisher publisher, SpoonBuild build, String image, Launcher launcher, BuildListener listener) {
+                try {
+                    publisher.exportToArchive(build, image, launcher, listener);
+                } catch (IOException ex) {
+                    throw onFailedExport(image, ex);
+                } catch (InterruptedException ex) {
+                    throw onFailedExport(image, ex);
+                }
+            }
+        },
+        CHUNK_STORE {
+            @Override
+            void validate(ExportPublisher publisher, SpoonBuild build, BuildListener listener) {
+            }
+
+            @Override
+            void export(ExportPublisher publisher, SpoonBuild build, String image, Launcher launcher, BuildListener listener) {
+                try {
+                    publisher.exportToChunkStore(build, image, launcher, listener);
+                } catch (IOException ex) {
+                    throw onFailedExport(image, ex);
+                } catch (InterruptedException ex) {
+                    throw onFailedExport(image, ex);
+                }
+            }
+        },
+        DELTA_ARCHIVE {
+            @Override
+            void validate(ExportPublisher publisher, SpoonBuild build, BuildListener listener) {
+            }
+
+            @Override
+            void export(ExportPublisher publisher, SpoonBuild build, String image, Launcher launcher, BuildListener listener) {
+                try {
+                    publisher.exportWithDeltaTransfer(build, image, launcher, listener);
+                } catch (IOException ex) {
+                    throw onFailedExport(image, ex);
+                } catch (InterruptedException ex) {
+                    throw onFailedExport(image, ex);
+                }
+            }
+        },
+        OBJECT_STORE {
+            @Override
+            void validate(ExportPublisher publisher, SpoonBuild build, BuildListener listener) {
+                checkState(publisher.getEndpoint() != null, REQUIRE_NOT_NULL_OR_EMPTY_S, "endpoint");
+                checkState(publisher.getBucket() != null, REQUIRE_NOT_NULL_OR_EMPTY_S, "bucket");
+                checkState(publisher.getCredentialsId() != null, REQUIRE_NOT_NULL_OR_EMPTY_S, "credentials");
+            }
+
+            @Override
+            void export(ExportPublisher publisher, SpoonBuild build, String image, Launcher launcher, BuildListener listener) {
+                try {
+                    publisher.exportToObjectStore(build, image, launcher, listener);
+                } catch (IOException ex) {
+                    throw onFailedExport(image, ex);
+                } catch (InterruptedException ex) {
+                    throw onFailedExport(image, ex);
+                }
+            }
+        };
+
+        abstract void validate(ExportPublisher publisher, SpoonBuild build, BuildListener listener) throws IllegalStateException;
+
+        abstract void export(ExportPublisher publisher, SpoonBuild build, String image, Launcher launcher, BuildListener listener) throws IllegalStateException;
     }
 
     @Extension
@@ -89,6 +432,8 @@ public class ExportPublisher extends SpoonBasePublisher {
 
         private static final Validator<File> OUTPUT_FILE_VALIDATOR;
         private static final Validator<String> OUTPUT_FILE_STRING_VALIDATOR;
+        private static final Validator<String> ENDPOINT_VALIDATOR;
+        private static final Validator<String> BUCKET_VALIDATOR;
 
         static {
             OUTPUT_FILE_VALIDATOR = Validators.chain(
@@ -97,6 +442,10 @@ public class ExportPublisher extends SpoonBasePublisher {
                     FileValidators.isPathAbsolute(PATH_SHOULD_BE_ABSOLUTE, Level.WARNING));
 
             OUTPUT_FILE_STRING_VALIDATOR = StringValidators.isNotNull(REQUIRED_PARAMETER, Level.ERROR);
+            ENDPOINT_VALIDATOR = StringValidators.isNotNull(REQUIRED_PARAMETER, Level.ERROR);
+            BUCKET_VALIDATOR = Validators.chain(
+                    StringValidators.isNotNull(REQUIRED_PARAMETER, Level.ERROR),
+                    StringValidators.isSingleWord(String.format(REQUIRE_SINGLE_WORD_S, "Bucket")));
         }
 
         @Override
@@ -116,10 +465,72 @@ public class ExportPublisher extends SpoonBasePublisher {
             }
         }
 
+        public FormValidation doCheckEndpoint(@QueryParameter String value) {
+            String endpoint = Util.fixEmptyAndTrim(value);
+            try {
+                ENDPOINT_VALIDATOR.validate(endpoint);
+                new URL(endpoint);
+                return FormValidation.ok();
+            } catch (ValidationException ex) {
+                return ex.getFailureMessage();
+            } catch (MalformedURLException ex) {
+                return FormValidation.error("Endpoint must be a URL, for example https://s3.amazonaws.com or http://localhost:9000");
+            }
+        }
+
+        public FormValidation doCheckBucket(@QueryParameter String value) {
+            String bucket = Util.fixEmptyAndTrim(value);
+            return Validators.validate(BUCKET_VALIDATOR, bucket);
+        }
+
+        public ListBoxModel doFillCredentialsIdItems(@AncestorInPath Item project) {
+            if (project == null || !project.hasPermission(Item.CONFIGURE)) {
+                return new StandardListBoxModel();
+            }
+
+            List<StandardUsernamePasswordCredentials> projectCredentials = Credentials.lookupByItem(StandardUsernamePasswordCredentials.class, project);
+            return new StandardListBoxModel().withEmptySelection().withAll(projectCredentials);
+        }
+
         public AutoCompletionCandidates doAutoCompleteOutputFile(@QueryParameter String value) {
             return AutoCompletion.suggestFiles(value);
         }
 
+        @Override
+        public Publisher newInstance(StaplerRequest req, JSONObject formData) throws FormException {
+            try {
+                JSONObject destinationJSON = formData.getJSONObject("destination");
+
+                ExportDestination destination = ExportDestination.FILE;
+                String outputFile = null;
+                String endpoint = null;
+                String region = null;
+                String bucket = null;
+                String objectKey = null;
+                String credentialsId = null;
+                boolean resumeUpload = false;
+
+                if (destinationJSON != null && !destinationJSON.isNullObject()) {
+                    destination = ExportDestination.valueOf(destinationJSON.getString("value"));
+                    outputFile = getKeyOrDefault(destinationJSON, "outputFile");
+                    endpoint = getKeyOrDefault(destinationJSON, "endpoint");
+                    region = getKeyOrDefault(destinationJSON, "region");
+                    bucket = getKeyOrDefault(destinationJSON, "bucket");
+                    objectKey = getKeyOrDefault(destinationJSON, "objectKey");
+                    credentialsId = getKeyOrDefault(destinationJSON, "credentialsId");
+                    resumeUpload = destinationJSON.optBoolean("resumeUpload");
+                }
+
+                return new ExportPublisher(destination, outputFile, endpoint, region, bucket, objectKey, credentialsId, resumeUpload);
+            } catch (JSONException ex) {
+                throw new IllegalStateException("Error while parsing data form", ex);
+            }
+        }
+
+        private static String getKeyOrDefault(JSONObject json, String key) {
+            return json.containsKey(key) ? json.getString(key) : null;
+        }
+
         @Override
         public String getDisplayName() {
             return "Export Spoon image";
@@ -0,0 +1,83 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import hudson.Functions;
+import hudson.model.Action;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Describes an image archived by {@link ExportPublisher}, including digests computed while the image was transferred,
+ * so consumers of the artifact can verify it through the remote API.
+ */
+@ExportedBean
+public class ExportedImageAction implements Action {
+
+    private final String artifactPath;
+    private final String sha256;
+    private final long size;
+    private final String imageSha256;
+    private final long imageSize;
+    private final boolean compressed;
+
+    public ExportedImageAction(String artifactPath, String sha256, long size, String imageSha256, long imageSize, boolean compressed) {
+        this.artifactPath = artifactPath;
+        this.sha256 = sha256;
+        this.size = size;
+        this.imageSha256 = imageSha256;
+        this.imageSize = imageSize;
+        this.compressed = compressed;
+    }
+
+    @Exported
+    public String getArtifactPath() {
+        return this.artifactPath;
+    }
+
+    @Exported
+    public String getSha256() {
+        return this.sha256;
+    }
+
+    @Exported
+    public long getSize() {
+        return this.size;
+    }
+
+    @Exported
+    public String getImageSha256() {
+        return this.imageSha256;
+    }
+
+    @Exported
+    public long getImageSize() {
+        return this.imageSize;
+    }
+
+    @Exported
+    public boolean isCompressed() {
+        return this.compressed;
+    }
+
+    public String getHumanReadableSize() {
+        return Functions.humanReadableByteSize(this.size);
+    }
+
+    public String getHumanReadableImageSize() {
+        return Functions.humanReadableByteSize(this.imageSize);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Exported Spoon image";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+}
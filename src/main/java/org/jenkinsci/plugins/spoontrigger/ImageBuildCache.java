@@ -0,0 +1,137 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Maps a digest of spoon build inputs to the image built from them, per node.
+ * Entries are persisted under JENKINS_HOME and evicted in least recently used order.
+ * Lookups only reorder entries in memory; the order is persisted with the next modification.
+ */
+final class ImageBuildCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ImageBuildCache.class.getName());
+
+    static final int MAX_ENTRIES = Integer.getInteger(ImageBuildCache.class.getName() + ".maxEntries", 256);
+
+    private static final ImageBuildCache INSTANCE = new ImageBuildCache();
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return this.size() > MAX_ENTRIES;
+        }
+    };
+
+    private boolean loaded;
+
+    private ImageBuildCache() {
+    }
+
+    static ImageBuildCache getInstance() {
+        return INSTANCE;
+    }
+
+    private static String toKey(String nodeName, String digest) {
+        return String.format("%s#%s", nodeName, digest);
+    }
+
+    synchronized Optional<String> lookup(String nodeName, String digest) {
+        this.load();
+
+        Entry entry = this.entries.get(toKey(nodeName, digest));
+        if (entry == null) {
+            return Optional.absent();
+        }
+
+        return Optional.of(entry.getImage());
+    }
+
+    synchronized void put(String nodeName, String digest, String image) {
+        this.load();
+
+        this.entries.put(toKey(nodeName, digest), new Entry(nodeName, digest, image));
+        this.save();
+    }
+
+    synchronized void invalidateImage(String nodeName, String image) {
+        this.load();
+
+        boolean modified = false;
+        Iterator<Entry> entryIt = this.entries.values().iterator();
+        while (entryIt.hasNext()) {
+            Entry entry = entryIt.next();
+            if (entry.getNodeName().equals(nodeName) && entry.getImage().equalsIgnoreCase(image)) {
+                entryIt.remove();
+                modified = true;
+            }
+        }
+
+        if (modified) {
+            this.save();
+        }
+    }
+
+    private XmlFile getConfigFile() {
+        File rootDir = Jenkins.getInstance().getRootDir();
+        return new XmlFile(Jenkins.XSTREAM, new File(rootDir, ImageBuildCache.class.getName() + ".xml"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load() {
+        if (this.loaded) {
+            return;
+        }
+
+        this.loaded = true;
+        XmlFile configFile = this.getConfigFile();
+        if (!configFile.exists()) {
+            return;
+        }
+
+        try {
+            List<Entry> persistedEntries = (List<Entry>) configFile.read();
+            for (Entry entry : persistedEntries) {
+                this.entries.put(toKey(entry.getNodeName(), entry.getDigest()), entry);
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to load Spoon build cache from " + configFile, ex);
+        }
+    }
+
+    private void save() {
+        XmlFile configFile = this.getConfigFile();
+        try {
+            configFile.write(Lists.newArrayList(this.entries.values()));
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to save Spoon build cache to " + configFile, ex);
+        }
+    }
+
+    static final class Entry {
+        @Getter
+        private final String nodeName;
+        @Getter
+        private final String digest;
+        @Getter
+        private final String image;
+
+        Entry(String nodeName, String digest, String image) {
+            this.nodeName = nodeName;
+            this.digest = digest;
+            this.image = image;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Sets;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.PeriodicWork;
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.spoontrigger.client.RemoveImageCommand;
+import org.jenkinsci.plugins.spoontrigger.client.SpoonClient;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes the least recently used Spoon images from a node when its free disk space drops below a budget.
+ * Output and base images of running builds, of builds still publishing in the background and of the most recent
+ * successful builds of every project are never removed.
+ */
+@Extension
+public final class ImageGarbageCollector extends AsyncPeriodicWork {
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    static final long MIN_FREE_SPACE_BYTES = Long.getLong(ImageGarbageCollector.class.getName() + ".minFreeSpaceMegabytes", 10 * 1024) * MEGABYTE;
+    static final int RECURRENCE_MINUTES = Integer.getInteger(ImageGarbageCollector.class.getName() + ".recurrenceMinutes", 15);
+    static final int MIN_IDLE_MINUTES = Integer.getInteger(ImageGarbageCollector.class.getName() + ".minIdleMinutes", 60);
+    static final int PINNED_BUILDS = Integer.getInteger(ImageGarbageCollector.class.getName() + ".pinnedBuilds", 3);
+    static final int BUILD_SEARCH_DEPTH = Integer.getInteger(ImageGarbageCollector.class.getName() + ".buildSearchDepth", 50);
+    static final String STORAGE_PATH = System.getProperty(ImageGarbageCollector.class.getName() + ".storagePath");
+
+    private static final long REMOVE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    public ImageGarbageCollector() {
+        super("Spoon image garbage collection");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(RECURRENCE_MINUTES);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        if (MIN_FREE_SPACE_BYTES <= 0) {
+            return;
+        }
+
+        for (String nodeName : ImageUsageTracker.getInstance().getNodeNames()) {
+            try {
+                this.collect(nodeName, listener);
+            } catch (IOException ex) {
+                ex.printStackTrace(listener.error("Failed to collect Spoon images on node (%s)", toDisplayName(nodeName)));
+            }
+        }
+    }
+
+    private void collect(String nodeName, TaskListener listener) throws IOException, InterruptedException {
+        Jenkins jenkins = Jenkins.getInstance();
+        Node node = nodeName.isEmpty() ? jenkins : jenkins.getNode(nodeName);
+        if (node == null) {
+            ImageUsageTracker.getInstance().removeNode(nodeName);
+            return;
+        }
+
+        Computer computer = node.toComputer();
+        FilePath rootPath = node.getRootPath();
+        if (computer == null || computer.isOffline() || rootPath == null) {
+            return;
+        }
+
+        FilePath storagePath = getStoragePath(rootPath);
+        long freeSpace = storagePath.getUsableDiskSpace();
+        if (freeSpace >= MIN_FREE_SPACE_BYTES) {
+            return;
+        }
+
+        listener.getLogger().println(String.format("Node (%s) has %s of free space left, less than the budget of %s",
+                toDisplayName(nodeName), Functions.humanReadableByteSize(freeSpace), Functions.humanReadableByteSize(MIN_FREE_SPACE_BYTES)));
+
+        SpoonClient client = createClient(node, computer, rootPath, listener);
+        Set<String> protectedImages = findProtectedImages(nodeName);
+
+        long idleThresholdMillis = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(MIN_IDLE_MINUTES);
+        for (ImageUsageTracker.Entry entry : ImageUsageTracker.getInstance().getLeastRecentlyUsed(nodeName)) {
+            if (freeSpace >= MIN_FREE_SPACE_BYTES || entry.getLastUsedMillis() > idleThresholdMillis) {
+                break;
+            }
+
+            String image = entry.getImage();
+            if (protectedImages.contains(image.toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+
+            try {
+                RemoveImageCommand.builder().image(image).timeout(REMOVE_TIMEOUT_MILLIS).build().run(client);
+            } catch (IllegalStateException ex) {
+                listener.error("Failed to remove image (%s) from node (%s): %s", image, toDisplayName(nodeName), ex.getMessage());
+                continue;
+            }
+
+            ImageUsageTracker.getInstance().remove(nodeName, image);
+            ImageBuildCache.getInstance().invalidateImage(nodeName, image);
+            WarmImageRegistry.getInstance().markEvicted(nodeName, image);
+            freeSpace = storagePath.getUsableDiskSpace();
+            listener.getLogger().println(String.format("Removed image (%s) from node (%s), %s of free space left",
+                    image, toDisplayName(nodeName), Functions.humanReadableByteSize(freeSpace)));
+        }
+
+        if (freeSpace < MIN_FREE_SPACE_BYTES) {
+            listener.error("Node (%s) is still below the free space budget, all remaining images are in use or protected", toDisplayName(nodeName));
+        }
+    }
+
+    static FilePath getStoragePath(FilePath rootPath) {
+        return (STORAGE_PATH == null) ? rootPath : new FilePath(rootPath, STORAGE_PATH);
+    }
+
+    static SpoonClient createClient(Node node, Computer computer, FilePath rootPath, TaskListener listener)
+            throws IOException, InterruptedException {
+        return SpoonClient.builder()
+                .env(computer.buildEnvironment(listener))
+                .pwd(rootPath)
+                .launcher(node.createLauncher(listener))
+                .listener(listener)
+                .nodeName(node.getNodeName())
+                .charset(computer.getDefaultCharset())
+                .build();
+    }
+
+    private static Set<String> findProtectedImages(String nodeName) {
+        Set<String> protectedImages = Sets.newHashSet();
+        for (SpoonProject project : Jenkins.getInstance().getAllItems(SpoonProject.class)) {
+            int pinnedBuilds = 0;
+            SpoonBuild build = project.getLastBuild();
+            for (int depth = 0; build != null && depth < BUILD_SEARCH_DEPTH && pinnedBuilds < PINNED_BUILDS; ++depth) {
+                if (nodeName.equals(build.getBuiltOnStr())) {
+                    if (build.isBuilding() || isPublishing(build)) {
+                        addImages(protectedImages, build);
+                    } else if (build.getResult() == Result.SUCCESS && build.getBuiltImage().isPresent()) {
+                        addImages(protectedImages, build);
+                        pinnedBuilds++;
+                    }
+                }
+                build = build.getPreviousBuild();
+            }
+        }
+        return protectedImages;
+    }
+
+    private static void addImages(Set<String> images, SpoonBuild build) {
+        Optional<String> builtImage = build.getBuiltImage();
+        if (builtImage.isPresent()) {
+            images.add(builtImage.get().toLowerCase(Locale.ROOT));
+        }
+        for (String baseImage : build.getBaseImages()) {
+            images.add(baseImage.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static boolean isPublishing(SpoonBuild build) {
+        for (AsyncPublishAction action : build.getActions(AsyncPublishAction.class)) {
+            if (!action.isCompleted()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String toDisplayName(String nodeName) {
+        return nodeName.isEmpty() ? "master" : nodeName;
+    }
+
+    /**
+     * Starts a collection when a build completes, so disk space is reclaimed before the next build on the node
+     * without delaying the completed one.
+     */
+    @Extension
+    public static final class RunListenerImpl extends RunListener<SpoonBuild> {
+
+        public RunListenerImpl() {
+            super(SpoonBuild.class);
+        }
+
+        @Override
+        public void onCompleted(SpoonBuild build, TaskListener listener) {
+            if (MIN_FREE_SPACE_BYTES <= 0 || !build.getBuiltImage().isPresent()) {
+                return;
+            }
+
+            ImageGarbageCollector collector = PeriodicWork.all().get(ImageGarbageCollector.class);
+            if (collector != null) {
+                collector.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records when each image was last used by a Spoon build, per node.
+ * Entries are persisted under JENKINS_HOME and drive the eviction order of {@link ImageGarbageCollector}.
+ */
+final class ImageUsageTracker {
+
+    private static final Logger LOGGER = Logger.getLogger(ImageUsageTracker.class.getName());
+
+    private static final ImageUsageTracker INSTANCE = new ImageUsageTracker();
+
+    private static final Comparator<Entry> LEAST_RECENTLY_USED_FIRST = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry left, Entry right) {
+            return (left.getLastUsedMillis() < right.getLastUsedMillis()) ? -1
+                    : ((left.getLastUsedMillis() == right.getLastUsedMillis()) ? 0 : 1);
+        }
+    };
+
+    private final Map<String, Entry> entries = Maps.newHashMap();
+
+    private boolean loaded;
+
+    private ImageUsageTracker() {
+    }
+
+    static ImageUsageTracker getInstance() {
+        return INSTANCE;
+    }
+
+    private static String toKey(String nodeName, String image) {
+        return String.format("%s#%s", nodeName, image.toLowerCase(Locale.ROOT));
+    }
+
+    synchronized void recordUse(String nodeName, String image) {
+        this.load();
+
+        this.entries.put(toKey(nodeName, image), new Entry(nodeName, image, System.currentTimeMillis()));
+        this.save();
+    }
+
+    /**
+     * Starts tracking an image that arrived on a node without being used by a build. The last use of an image
+     * that is tracked already is kept, so pulling an image again does not keep it from being removed.
+     */
+    synchronized void recordIfAbsent(String nodeName, String image) {
+        this.load();
+
+        String key = toKey(nodeName, image);
+        if (!this.entries.containsKey(key)) {
+            this.entries.put(key, new Entry(nodeName, image, System.currentTimeMillis()));
+            this.save();
+        }
+    }
+
+    synchronized void recordUse(String nodeName, Iterable<String> images) {
+        this.load();
+
+        long now = System.currentTimeMillis();
+        for (String image : images) {
+            this.entries.put(toKey(nodeName, image), new Entry(nodeName, image, now));
+        }
+        this.save();
+    }
+
+    synchronized void remove(String nodeName, String image) {
+        this.load();
+
+        if (this.entries.remove(toKey(nodeName, image)) != null) {
+            this.save();
+        }
+    }
+
+    synchronized void removeNode(String nodeName) {
+        this.load();
+
+        boolean modified = false;
+        Iterator<Entry> entryIt = this.entries.values().iterator();
+        while (entryIt.hasNext()) {
+            if (entryIt.next().getNodeName().equals(nodeName)) {
+                entryIt.remove();
+                modified = true;
+            }
+        }
+
+        if (modified) {
+            this.save();
+        }
+    }
+
+    synchronized Set<String> getNodeNames() {
+        this.load();
+
+        Set<String> nodeNames = Sets.newTreeSet();
+        for (Entry entry : this.entries.values()) {
+            nodeNames.add(entry.getNodeName());
+        }
+        return nodeNames;
+    }
+
+    synchronized List<Entry> getLeastRecentlyUsed(String nodeName) {
+        this.load();
+
+        List<Entry> nodeEntries = Lists.newArrayList();
+        for (Entry entry : this.entries.values()) {
+            if (entry.getNodeName().equals(nodeName)) {
+                nodeEntries.add(entry);
+            }
+        }
+        Collections.sort(nodeEntries, LEAST_RECENTLY_USED_FIRST);
+        return nodeEntries;
+    }
+
+    private XmlFile getConfigFile() {
+        File rootDir = Jenkins.getInstance().getRootDir();
+        return new XmlFile(Jenkins.XSTREAM, new File(rootDir, ImageUsageTracker.class.getName() + ".xml"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load() {
+        if (this.loaded) {
+            return;
+        }
+
+        this.loaded = true;
+        XmlFile configFile = this.getConfigFile();
+        if (!configFile.exists()) {
+            return;
+        }
+
+        try {
+            List<Entry> persistedEntries = (List<Entry>) configFile.read();
+            for (Entry entry : persistedEntries) {
+                this.entries.put(toKey(entry.getNodeName(), entry.getImage()), entry);
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to load Spoon image usage from " + configFile, ex);
+        }
+    }
+
+    private void save() {
+        XmlFile configFile = this.getConfigFile();
+        try {
+            configFile.write(Lists.newArrayList(this.entries.values()));
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to save Spoon image usage to " + configFile, ex);
+        }
+    }
+
+    static final class Entry {
+        @Getter
+        private final String nodeName;
+        @Getter
+        private final String image;
+        @Getter
+        private final long lastUsedMillis;
+
+        Entry(String nodeName, String image, long lastUsedMillis) {
+            this.nodeName = nodeName;
+            this.image = image;
+            this.lastUsedMillis = lastUsedMillis;
+        }
+    }
+}
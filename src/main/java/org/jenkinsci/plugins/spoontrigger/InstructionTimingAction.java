@@ -0,0 +1,76 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import hudson.Util;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import lombok.Getter;
+import org.jenkinsci.plugins.spoontrigger.client.InstructionTiming;
+
+import java.util.List;
+import java.util.Map;
+
+public class InstructionTimingAction implements RunAction2 {
+
+    static final String URL_NAME = "spoonInstructions";
+
+    private final List<InstructionTiming> timings;
+
+    @Getter
+    private transient Run<?, ?> owner;
+
+    public InstructionTimingAction(List<InstructionTiming> timings) {
+        this.timings = ImmutableList.copyOf(timings);
+    }
+
+    public List<InstructionTiming> getTimings() {
+        return this.timings;
+    }
+
+    public long getTotalMillis() {
+        long totalMillis = 0;
+        for (InstructionTiming timing : this.timings) {
+            totalMillis += timing.getDurationMillis();
+        }
+        return totalMillis;
+    }
+
+    public String formatDuration(long durationMillis) {
+        return Util.getTimeSpanString(durationMillis);
+    }
+
+    Map<String, Long> getDurationsByInstruction() {
+        Map<String, Long> durations = Maps.newLinkedHashMap();
+        for (InstructionTiming timing : this.timings) {
+            Long duration = durations.get(timing.getInstruction());
+            durations.put(timing.getInstruction(), (duration == null ? 0 : duration) + timing.getDurationMillis());
+        }
+        return durations;
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> run) {
+        this.owner = run;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> run) {
+        this.owner = run;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "clock.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "SpoonScript Timings";
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+}
@@ -0,0 +1,83 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class InstructionTrendAction implements Action {
+
+    static final int MAX_BUILDS = Integer.getInteger(InstructionTrendAction.class.getName() + ".maxBuilds", 20);
+    static final int MAX_SCANNED_BUILDS = Integer.getInteger(InstructionTrendAction.class.getName() + ".maxScannedBuilds", 100);
+
+    @Getter
+    private final AbstractProject<?, ?> project;
+
+    public InstructionTrendAction(AbstractProject<?, ?> project) {
+        this.project = project;
+    }
+
+    public List<BuildTimings> getBuilds() {
+        List<BuildTimings> builds = Lists.newArrayList();
+        // bounds the builds loaded from disk for projects that rarely record timings
+        for (AbstractBuild<?, ?> build : this.project.getBuilds().limit(MAX_SCANNED_BUILDS)) {
+            if (builds.size() == MAX_BUILDS) {
+                break;
+            }
+
+            InstructionTimingAction action = build.getAction(InstructionTimingAction.class);
+            if (action != null) {
+                builds.add(new BuildTimings(build, action.getDurationsByInstruction()));
+            }
+        }
+        return builds;
+    }
+
+    public List<String> getInstructions(List<BuildTimings> builds) {
+        Set<String> instructions = Sets.newLinkedHashSet();
+        for (BuildTimings build : builds) {
+            instructions.addAll(build.durations.keySet());
+        }
+        return ImmutableList.copyOf(instructions);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "clock.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "SpoonScript Timing Trend";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "spoonInstructionTrend";
+    }
+
+    public static final class BuildTimings {
+
+        @Getter
+        private final AbstractBuild<?, ?> build;
+        private final Map<String, Long> durations;
+
+        BuildTimings(AbstractBuild<?, ?> build, Map<String, Long> durations) {
+            this.build = build;
+            this.durations = durations;
+        }
+
+        public String getDuration(String instruction) {
+            Long durationMillis = this.durations.get(instruction);
+            return (durationMillis == null) ? "" : Util.getTimeSpanString(durationMillis);
+        }
+    }
+}
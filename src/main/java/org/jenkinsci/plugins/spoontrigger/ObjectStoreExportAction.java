@@ -0,0 +1,82 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import hudson.Functions;
+import hudson.model.Action;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Describes an image uploaded by {@link ExportPublisher} to an object store.
+ */
+@ExportedBean
+public class ObjectStoreExportAction implements Action {
+
+    private final String url;
+    private final String eTag;
+    private final String sha256;
+    private final long size;
+    private final int partCount;
+    private final int resumedPartCount;
+    private final int retryCount;
+
+    public ObjectStoreExportAction(String url, String eTag, String sha256, long size, int partCount, int resumedPartCount, int retryCount) {
+        this.url = url;
+        this.eTag = eTag;
+        this.sha256 = sha256;
+        this.size = size;
+        this.partCount = partCount;
+        this.resumedPartCount = resumedPartCount;
+        this.retryCount = retryCount;
+    }
+
+    @Exported
+    public String getUrl() {
+        return this.url;
+    }
+
+    @Exported
+    public String getETag() {
+        return this.eTag;
+    }
+
+    @Exported
+    public String getSha256() {
+        return this.sha256;
+    }
+
+    @Exported
+    public long getSize() {
+        return this.size;
+    }
+
+    public int getPartCount() {
+        return this.partCount;
+    }
+
+    public int getResumedPartCount() {
+        return this.resumedPartCount;
+    }
+
+    public int getRetryCount() {
+        return this.retryCount;
+    }
+
+    public String getHumanReadableSize() {
+        return Functions.humanReadableByteSize(this.size);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Uploaded Spoon image";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+}
@@ -0,0 +1,44 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import hudson.Functions;
+import hudson.model.Action;
+import lombok.Getter;
+
+public class OutputTransferAction implements Action {
+
+    @Getter
+    private final long rawBytes;
+    @Getter
+    private final long transferredBytes;
+    @Getter
+    private final boolean compressed;
+
+    public OutputTransferAction(long rawBytes, long transferredBytes, boolean compressed) {
+        this.rawBytes = rawBytes;
+        this.transferredBytes = transferredBytes;
+        this.compressed = compressed;
+    }
+
+    public String getRawSize() {
+        return Functions.humanReadableByteSize(this.rawBytes);
+    }
+
+    public String getTransferredSize() {
+        return Functions.humanReadableByteSize(this.transferredBytes);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Spoon output transfer";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+}
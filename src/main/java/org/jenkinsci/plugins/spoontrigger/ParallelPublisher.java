@@ -0,0 +1,303 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+import com.google.common.reflect.TypeToken;
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.Descriptor;
+import hudson.model.Node;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.BuildStepMonitor;
+import hudson.tasks.Publisher;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.FormValidation;
+import hudson.util.NamingThreadFactory;
+import hudson.util.StreamBuildListener;
+import lombok.Getter;
+import org.jenkinsci.plugins.spoontrigger.client.LoginSessionManager;
+import org.jenkinsci.plugins.spoontrigger.utils.PrefixedOutputStream;
+import org.jenkinsci.plugins.spoontrigger.utils.TaskListeners;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+import javax.annotation.Nullable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.jenkinsci.plugins.spoontrigger.Messages.requireInstanceOf;
+
+public class ParallelPublisher extends Publisher {
+
+    private static final Logger LOGGER = Logger.getLogger(ParallelPublisher.class.getName());
+
+    static final int DEFAULT_MAX_CONCURRENCY = 2;
+
+    @Getter
+    private final List<SpoonBasePublisher> publishers;
+    @Getter
+    private final int maxConcurrency;
+    @Getter
+    private final boolean asynchronous;
+
+    @DataBoundConstructor
+    public ParallelPublisher(@Nullable List<SpoonBasePublisher> publishers, int maxConcurrency, boolean asynchronous) {
+        this.publishers = (publishers == null) ? ImmutableList.<SpoonBasePublisher>of() : ImmutableList.copyOf(publishers);
+        this.maxConcurrency = (maxConcurrency > 0) ? maxConcurrency : DEFAULT_MAX_CONCURRENCY;
+        this.asynchronous = asynchronous;
+    }
+
+    private static String toPrefix(SpoonBasePublisher publisher) {
+        return String.format("[%s] ", publisher.getDescriptor().getDisplayName());
+    }
+
+    @Override
+    public BuildStepMonitor getRequiredMonitorService() {
+        return BuildStepMonitor.BUILD;
+    }
+
+    @Override
+    public boolean prebuild(AbstractBuild<?, ?> build, BuildListener listener) {
+        if (!(build instanceof SpoonBuild)) {
+            listener.fatalError(requireInstanceOf("build", SpoonBuild.class));
+            return false;
+        }
+
+        boolean isReady = true;
+        for (SpoonBasePublisher publisher : this.publishers) {
+            isReady &= publisher.prebuild(build, listener);
+        }
+        return isReady;
+    }
+
+    @Override
+    public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+        if (this.asynchronous) {
+            Optional<String> conflict = this.findImageConflict((SpoonBuild) build);
+            if (conflict.isPresent()) {
+                listener.getLogger().println(String.format("%s. Publishing before the build completes", conflict.get()));
+            } else if (this.performAsynchronously((SpoonBuild) build, listener)) {
+                return true;
+            }
+        }
+
+        return this.performSynchronously(build, launcher, listener);
+    }
+
+    /**
+     * Background publishers act on the image after the next build of the project may have started. That is only safe
+     * if the next build cannot overwrite the image and no publisher removes an image the next build may reuse from the build cache.
+     */
+    private Optional<String> findImageConflict(SpoonBuild build) {
+        ScriptBuilder scriptBuilder = build.getProject().getBuildersList().get(ScriptBuilder.class);
+        if (scriptBuilder != null && scriptBuilder.getImageName() != null) {
+            return Optional.of(String.format("Image name (%s) is fixed, so the next build would replace the image being published",
+                    scriptBuilder.getImageName()));
+        }
+
+        for (SpoonBasePublisher publisher : this.publishers) {
+            if (publisher instanceof RemoveImagePublisher) {
+                return Optional.of("Local image is removed, so it could be removed while the next build reuses it");
+            }
+        }
+        return Optional.absent();
+    }
+
+    private boolean performAsynchronously(final SpoonBuild build, BuildListener listener) {
+        final AsyncPublishAction action = new AsyncPublishAction();
+        final LoginSessionManager.Lease loginSession = build.detachLoginSession();
+        Runnable publishTask = new Runnable() {
+            @Override
+            public void run() {
+                publishDetached(build, action, loginSession);
+            }
+        };
+
+        build.addAction(action);
+        if (AsyncPublishingService.getInstance().submit(build.getBuiltOnStr(), publishTask)) {
+            listener.getLogger().println("Spoon publishers continue in the background. Their outcome is recorded on this build");
+            return true;
+        }
+
+        build.getActions().remove(action);
+        if (loginSession != null) {
+            build.setLoginSession(loginSession);
+        }
+        listener.getLogger().println("Background publishing queue of the node is full. Publishing before the build completes");
+        return false;
+    }
+
+    private void publishDetached(SpoonBuild build, AsyncPublishAction action, @Nullable LoginSessionManager.Lease loginSession) {
+        action.markRunning();
+        boolean isSuccessful = false;
+        OutputStream logOut = null;
+        try {
+            logOut = new FileOutputStream(action.getLogFile());
+            BuildListener listener = new StreamBuildListener(logOut, build.getCharset());
+            try {
+                Node node = build.getBuiltOn();
+                checkState(node != null, "Node (%s) which built the image is no longer available", build.getBuiltOnStr());
+
+                Launcher launcher = node.createLauncher(listener);
+                isSuccessful = this.performSynchronously(build, launcher, listener);
+            } catch (IllegalStateException ex) {
+                TaskListeners.logFatalError(listener, ex);
+            } catch (InterruptedException ex) {
+                listener.error("Spoon publishing was interrupted");
+            } catch (IOException ex) {
+                ex.printStackTrace(listener.error("Spoon publishing failed"));
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to create Spoon publishing log of " + build.getFullDisplayName(), ex);
+        } finally {
+            try {
+                final boolean swallowException = true;
+                Closeables.close(logOut, swallowException);
+            } catch (IOException ex) {
+                // no-op
+            }
+
+            if (loginSession != null) {
+                loginSession.release();
+            }
+
+            action.markCompleted(isSuccessful);
+            try {
+                build.save();
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Failed to save Spoon publishing outcome of " + build.getFullDisplayName(), ex);
+            }
+        }
+    }
+
+    private boolean performSynchronously(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+        List<SpoonBasePublisher> concurrentPublishers = Lists.newArrayList();
+        List<SpoonBasePublisher> finalPublishers = Lists.newArrayList();
+        for (SpoonBasePublisher publisher : this.publishers) {
+            if (publisher instanceof RemoveImagePublisher) {
+                finalPublishers.add(publisher);
+            } else {
+                concurrentPublishers.add(publisher);
+            }
+        }
+
+        boolean isSuccessful = this.performConcurrently(concurrentPublishers, build, launcher, listener);
+        for (SpoonBasePublisher publisher : finalPublishers) {
+            isSuccessful &= this.performPrefixed(publisher, build, launcher, listener);
+        }
+        return isSuccessful;
+    }
+
+    private boolean performConcurrently(List<SpoonBasePublisher> concurrentPublishers, final AbstractBuild<?, ?> build,
+                                        final Launcher launcher, final BuildListener listener) throws InterruptedException, IOException {
+        if (concurrentPublishers.isEmpty()) {
+            return true;
+        }
+
+        int poolSize = Math.min(this.maxConcurrency, concurrentPublishers.size());
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize,
+                new NamingThreadFactory(new DaemonThreadFactory(), "ParallelPublisher " + build.getFullDisplayName()));
+        try {
+            List<Future<Boolean>> results = Lists.newArrayList();
+            for (final SpoonBasePublisher publisher : concurrentPublishers) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return performPrefixed(publisher, build, launcher, listener);
+                    }
+                }));
+            }
+
+            // every publisher is waited for, so a failing one neither hides the outcome of the others
+            // nor interrupts them half way through an upload
+            boolean isSuccessful = true;
+            List<Throwable> failures = Lists.newArrayList();
+            for (int publisherIndex = 0; publisherIndex < results.size(); ++publisherIndex) {
+                SpoonBasePublisher publisher = concurrentPublishers.get(publisherIndex);
+                isSuccessful &= this.getResult(publisher, results.get(publisherIndex), failures, listener);
+            }
+
+            for (Throwable failure : failures) {
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                if (failure instanceof InterruptedException) {
+                    throw (InterruptedException) failure;
+                }
+            }
+            return isSuccessful;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean getResult(SpoonBasePublisher publisher, Future<Boolean> result, List<Throwable> failures, BuildListener listener)
+            throws InterruptedException {
+        try {
+            boolean isSuccessful = result.get();
+            listener.getLogger().println(String.format("%s%s", toPrefix(publisher), isSuccessful ? "completed" : "failed"));
+            return isSuccessful;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            listener.error("%sfailed: %s", toPrefix(publisher), cause);
+            failures.add(cause);
+            return false;
+        }
+    }
+
+    private boolean performPrefixed(SpoonBasePublisher publisher, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+            throws InterruptedException, IOException {
+        PrintStream logger = listener.getLogger();
+        PrefixedOutputStream out = new PrefixedOutputStream(logger, toPrefix(publisher), build.getCharset());
+        try {
+            BuildListener publisherListener = new StreamBuildListener(out, build.getCharset());
+            return publisher.perform(build, launcher, publisherListener);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends BuildStepDescriptor<Publisher> {
+
+        public List<Descriptor<Publisher>> getPublisherDescriptors() {
+            List<Descriptor<Publisher>> descriptors = Lists.newArrayList();
+            for (Descriptor<Publisher> descriptor : Publisher.all()) {
+                if (SpoonBasePublisher.class.isAssignableFrom(descriptor.clazz)) {
+                    descriptors.add(descriptor);
+                }
+            }
+            return descriptors;
+        }
+
+        public FormValidation doCheckMaxConcurrency(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        @Override
+        public boolean isApplicable(Class<? extends AbstractProject> aClass) {
+            return TypeToken.of(SpoonProject.class).isAssignableFrom(aClass);
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Run Spoon publishers in parallel";
+        }
+    }
+}
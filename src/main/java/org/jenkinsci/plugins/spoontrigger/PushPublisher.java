@@ -69,22 +69,23 @@ public class PushPublisher extends SpoonBasePublisher {
     }
 
     @Override
-    public void beforePublish(SpoonBuild build, BuildListener listener) {
-        super.beforePublish(build, listener);
+    public String beforePublish(SpoonBuild build, BuildListener listener) {
+        String image = super.beforePublish(build, listener);
 
         this.remoteImageStrategy.validate(this, build);
+        return image;
     }
 
     @Override
-    public void publish(AbstractBuild<?, ?> abstractBuild, Launcher launcher, BuildListener listener) throws IllegalStateException {
+    public void publish(AbstractBuild<?, ?> abstractBuild, String image, Launcher launcher, BuildListener listener) throws IllegalStateException {
         SpoonBuild build = (SpoonBuild) abstractBuild;
         SpoonClient client = super.createClient(build, launcher, listener);
-        PushCommand pushCmd = this.createPushCommand(build);
+        PushCommand pushCmd = this.createPushCommand(build, image);
         pushCmd.run(client);
     }
 
-    private PushCommand createPushCommand(SpoonBuild spoonBuild) {
-        PushCommand.CommandBuilder cmdBuilder = PushCommand.builder().image(super.getImageName().get());
+    private PushCommand createPushCommand(SpoonBuild spoonBuild, String image) {
+        PushCommand.CommandBuilder cmdBuilder = PushCommand.builder().image(image);
 
         Optional<String> remoteImage = this.remoteImageStrategy.tryGetRemoteImage(this, spoonBuild);
         if (remoteImage.isPresent()) {
@@ -18,14 +18,17 @@ public class RemoveImagePublisher extends SpoonBasePublisher {
     public RemoveImagePublisher() { }
 
     @Override
-    public void publish(AbstractBuild<?, ?> abstractBuild, Launcher launcher, BuildListener listener) throws IllegalStateException {
+    public void publish(AbstractBuild<?, ?> abstractBuild, String image, Launcher launcher, BuildListener listener) throws IllegalStateException {
         SpoonClient client = super.createClient(abstractBuild, launcher, listener);
-        RemoveImageCommand removeImageCmd = this.createRemoveImageCommand();
+        RemoveImageCommand removeImageCmd = this.createRemoveImageCommand(image);
         removeImageCmd.run(client);
+
+        ImageBuildCache.getInstance().invalidateImage(abstractBuild.getBuiltOnStr(), image);
+        ImageUsageTracker.getInstance().remove(abstractBuild.getBuiltOnStr(), image);
     }
 
-    private RemoveImageCommand createRemoveImageCommand() {
-        return RemoveImageCommand.builder().image(super.getImageName().get()).build();
+    private RemoveImageCommand createRemoveImageCommand(String image) {
+        return RemoveImageCommand.builder().image(image).build();
     }
 
     @Extension
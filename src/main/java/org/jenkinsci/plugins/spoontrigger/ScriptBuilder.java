@@ -2,8 +2,11 @@ package org.jenkinsci.plugins.spoontrigger;
 
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
 import com.google.common.reflect.TypeToken;
 import hudson.*;
 import hudson.model.*;
@@ -14,10 +17,15 @@ import hudson.util.ListBoxModel;
 import lombok.Data;
 import lombok.Getter;
 import org.jenkinsci.plugins.spoontrigger.client.BuildCommand;
+import org.jenkinsci.plugins.spoontrigger.client.CapabilityCache;
+import org.jenkinsci.plugins.spoontrigger.client.CommandBatch;
+import org.jenkinsci.plugins.spoontrigger.client.ImagesCommand;
 import org.jenkinsci.plugins.spoontrigger.client.LoginCommand;
+import org.jenkinsci.plugins.spoontrigger.client.LoginSessionManager;
+import org.jenkinsci.plugins.spoontrigger.client.SpoonCapabilities;
 import org.jenkinsci.plugins.spoontrigger.client.SpoonClient;
-import org.jenkinsci.plugins.spoontrigger.client.VersionCommand;
 import org.jenkinsci.plugins.spoontrigger.utils.AutoCompletion;
+import org.jenkinsci.plugins.spoontrigger.utils.ContentDigest;
 import org.jenkinsci.plugins.spoontrigger.utils.Credentials;
 import org.jenkinsci.plugins.spoontrigger.utils.FileResolver;
 import org.jenkinsci.plugins.spoontrigger.utils.TaskListeners;
@@ -29,7 +37,10 @@ import org.kohsuke.stapler.QueryParameter;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -38,6 +49,9 @@ import static org.jenkinsci.plugins.spoontrigger.Messages.*;
 
 public class ScriptBuilder extends Builder {
 
+    private static final String DIAGNOSTIC_FLAG = "--diagnostic";
+    private static final String NO_BASE_FLAG = "--no-base";
+
     @Nullable
     @Getter
     private final String scriptFilePath;
@@ -64,11 +78,16 @@ public class ScriptBuilder extends Builder {
     private final boolean noBase;
     @Getter
     private final boolean overwrite;
+    @Getter
+    private final boolean buildCache;
+    @Getter
+    private final boolean compressOutput;
 
     @DataBoundConstructor
     public ScriptBuilder(String scriptFilePath, String credentialsId, String imageName,
                          String vmVersion, String containerWorkingDir, @Nullable MountSettings mountSettings,
-                         boolean noBase, boolean overwrite, boolean diagnostic) {
+                         boolean noBase, boolean overwrite, boolean diagnostic, boolean buildCache,
+                         boolean compressOutput) {
         this.scriptFilePath = Util.fixEmptyAndTrim(scriptFilePath);
         this.credentialsId = Util.fixEmptyAndTrim(credentialsId);
         this.imageName = Util.fixEmptyAndTrim(imageName);
@@ -78,6 +97,8 @@ public class ScriptBuilder extends Builder {
         this.noBase = noBase;
         this.overwrite = overwrite;
         this.diagnostic = diagnostic;
+        this.buildCache = buildCache;
+        this.compressOutput = compressOutput;
     }
 
     private static IllegalStateException onGetEnvironmentFailed(Exception ex) {
@@ -85,6 +106,16 @@ public class ScriptBuilder extends Builder {
         return new IllegalStateException(errMsg, ex);
     }
 
+    private static boolean isSupported(SpoonCapabilities capabilities, String flag, TaskListener listener) {
+        if (capabilities.supports(flag)) {
+            return true;
+        }
+
+        String msg = String.format("Spoon %s does not support %s flag. The flag is ignored.", capabilities.getVersion(), flag);
+        listener.getLogger().println(msg);
+        return false;
+    }
+
     private static Optional<String> toString(FilePath filePath) {
         try {
             return Optional.of(filePath.getRemote());
@@ -105,6 +136,11 @@ public class ScriptBuilder extends Builder {
         return (this.mountSettings != null) ? this.mountSettings.getSourceFolder() : null;
     }
 
+    @Override
+    public Collection<? extends Action> getProjectActions(AbstractProject<?, ?> project) {
+        return Collections.singletonList(new InstructionTrendAction(project));
+    }
+
     @Override
     public boolean prebuild(AbstractBuild<?, ?> build, BuildListener listener) {
         checkArgument(build instanceof SpoonBuild, requireInstanceOf("build", SpoonBuild.class));
@@ -135,17 +171,72 @@ public class ScriptBuilder extends Builder {
     public boolean perform(AbstractBuild abstractBuild, Launcher launcher, BuildListener listener) throws IOException, InterruptedException {
         try {
             SpoonBuild build = (SpoonBuild) abstractBuild;
-            SpoonClient client = SpoonClient.builder(build).launcher(launcher).listener(listener).build();
+            SpoonClient client = SpoonClient.builder(build).launcher(launcher).listener(listener)
+                    .compressOutput(this.compressOutput).build();
 
-            checkSpoonPluginIsRunning(client);
+            SpoonCapabilities capabilities = CapabilityCache.get(client);
 
             Optional<StandardUsernamePasswordCredentials> credentials = build.getCredentials();
-            if (credentials.isPresent()) {
-                login(client, credentials.get());
+            LoginSessionManager.Lease session = acquireSession(client, credentials);
+            build.setLoginSession(session);
+
+            build.setBaseImages(BaseImageWarmer.parseBaseImages(build.getScript().get().readToString()));
+
+            BuildCommand buildCmd = createBuildCommand(capabilities, build.getScript().get(), listener);
+            Optional<String> buildDigest = this.computeBuildDigest(build, capabilities, buildCmd, listener);
+            Optional<String> cachedImage = Optional.absent();
+            if (buildDigest.isPresent()) {
+                cachedImage = ImageBuildCache.getInstance().lookup(client.getNodeName(), buildDigest.get());
+            }
+            if (cachedImage.isPresent() && !isImagePresent(client, cachedImage.get())) {
+                listener.getLogger().println(String.format("Cached image (%s) no longer exists on the node, rebuilding", cachedImage.get()));
+                ImageBuildCache.getInstance().invalidateImage(client.getNodeName(), cachedImage.get());
+                cachedImage = Optional.absent();
+            }
+
+            CommandBatch.BatchBuilder batch = CommandBatch.builder();
+            boolean loginRequired = credentials.isPresent() && !session.isLoggedIn();
+            if (loginRequired) {
+                batch.add(createLoginCommand(credentials.get()));
+            } else if (credentials.isPresent()) {
+                listener.getLogger().println(String.format("Reusing Spoon session of (%s)", credentials.get().getUsername()));
+            }
+
+            if (cachedImage.isPresent()) {
+                listener.getLogger().println(String.format("Build inputs are unchanged. Reusing image (%s) from the build cache", cachedImage.get()));
+            } else {
+                batch.add(buildCmd);
+            }
+
+            Optional<CommandBatch.BatchResult> result = Optional.absent();
+            if (!batch.isEmpty()) {
+                result = Optional.of(batch.build().run(client));
+                build.addAction(new OutputTransferAction(result.get().getRawOutputBytes(),
+                        result.get().getTransferredOutputBytes(), this.compressOutput));
+                if (!result.get().getInstructionTimings().isEmpty()) {
+                    build.addAction(new InstructionTimingAction(result.get().getInstructionTimings()));
+                }
+            }
+
+            if (loginRequired) {
+                session.markLoggedIn();
             }
 
-            String outputImage = build(client, build.getScript().get());
+            String outputImage;
+            if (cachedImage.isPresent()) {
+                outputImage = cachedImage.get();
+            } else {
+                outputImage = result.get().getGroup(result.get().getStepCount() - 1).get();
+                if (buildDigest.isPresent()) {
+                    ImageBuildCache.getInstance().put(client.getNodeName(), buildDigest.get(), outputImage);
+                }
+            }
             build.setBuiltImage(outputImage);
+
+            // base images count as used too, otherwise they age out while every build still starts from them
+            List<String> usedImages = Lists.newArrayList(build.getBaseImages());
+            usedImages.add(outputImage);
+            ImageUsageTracker.getInstance().recordUse(client.getNodeName(), usedImages);
             return true;
         } catch (IllegalStateException ex) {
             TaskListeners.logFatalError(listener, ex);
@@ -153,6 +244,14 @@ public class ScriptBuilder extends Builder {
         }
     }
 
+    private static boolean isImagePresent(SpoonClient client, String image) {
+        try {
+            return ImagesCommand.builder().build().run(client).contains(image.toLowerCase(Locale.ROOT));
+        } catch (IllegalStateException ex) {
+            return false;
+        }
+    }
+
     private void checkMountSettings() {
         if (this.mountSettings == null) {
             return;
@@ -161,17 +260,43 @@ public class ScriptBuilder extends Builder {
         this.mountSettings.checkMissing();
     }
 
-    private void checkSpoonPluginIsRunning(SpoonClient client) {
-        VersionCommand versionCmd = VersionCommand.builder().build();
-        versionCmd.run(client);
+    private LoginSessionManager.Lease acquireSession(SpoonClient client, Optional<StandardUsernamePasswordCredentials> credentials) throws InterruptedException {
+        String fingerprint = null;
+        if (credentials.isPresent()) {
+            fingerprint = LoginSessionManager.fingerprint(credentials.get().getUsername(), credentials.get().getPassword());
+        }
+        return LoginSessionManager.getInstance().acquire(client, fingerprint);
+    }
+
+    private Optional<String> computeBuildDigest(SpoonBuild build, SpoonCapabilities capabilities, BuildCommand buildCmd, TaskListener listener) throws InterruptedException {
+        if (!this.buildCache) {
+            return Optional.absent();
+        }
+
+        if (this.getSourceContainer() != null) {
+            listener.getLogger().println("Build cache is not used when the mounted folder comes from a container");
+            return Optional.absent();
+        }
+
+        try {
+            String contentDigest = ContentDigest.compute(build.getScript().get(), this.getSourceFolder());
+            String buildDigest = Hashing.sha256().newHasher()
+                    .putString(capabilities.getVersion(), Charsets.UTF_8).putChar('\0')
+                    .putString(buildCmd.getCommandLine(), Charsets.UTF_8).putChar('\0')
+                    .putString(contentDigest, Charsets.UTF_8)
+                    .hash().toString();
+            return Optional.of(buildDigest);
+        } catch (IOException ex) {
+            listener.getLogger().println(String.format("Build cache is not used. Failed to compute digest of build inputs: %s", ex.getMessage()));
+            return Optional.absent();
+        }
     }
 
-    private void login(SpoonClient client, StandardUsernamePasswordCredentials credentials) {
-        LoginCommand loginCmd = LoginCommand.builder().login(credentials.getUsername()).password(credentials.getPassword()).build();
-        loginCmd.run(client);
+    private LoginCommand createLoginCommand(StandardUsernamePasswordCredentials credentials) {
+        return LoginCommand.builder().login(credentials.getUsername()).password(credentials.getPassword()).build();
     }
 
-    private String build(SpoonClient client, FilePath scriptPath) {
+    private BuildCommand createBuildCommand(SpoonCapabilities capabilities, FilePath scriptPath, TaskListener listener) {
         BuildCommand.CommandBuilder cmdBuilder = BuildCommand.builder().script(scriptPath);
         if (this.imageName != null) {
             cmdBuilder.image(this.imageName);
@@ -189,12 +314,11 @@ public class ScriptBuilder extends Builder {
             this.mountSettings.fill(cmdBuilder);
         }
 
-        cmdBuilder.diagnostic(this.diagnostic);
+        cmdBuilder.diagnostic(this.diagnostic && isSupported(capabilities, DIAGNOSTIC_FLAG, listener));
         cmdBuilder.overwrite(this.overwrite);
-        cmdBuilder.noBase(this.noBase);
+        cmdBuilder.noBase(this.noBase && isSupported(capabilities, NO_BASE_FLAG, listener));
 
-        BuildCommand buildCmd = cmdBuilder.build();
-        return buildCmd.run(client);
+        return cmdBuilder.build();
     }
 
     private Optional<StandardUsernamePasswordCredentials> getCredentials() throws IllegalStateException {
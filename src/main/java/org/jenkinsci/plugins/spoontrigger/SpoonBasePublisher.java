@@ -1,14 +1,14 @@
 package org.jenkinsci.plugins.spoontrigger;
 
 import com.google.common.base.Optional;
+import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
+import hudson.model.Node;
 import hudson.model.Result;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Publisher;
-import lombok.AccessLevel;
-import lombok.Getter;
 import org.jenkinsci.plugins.spoontrigger.client.SpoonClient;
 import org.jenkinsci.plugins.spoontrigger.utils.TaskListeners;
 
@@ -20,9 +20,6 @@ import static org.jenkinsci.plugins.spoontrigger.Messages.requireInstanceOf;
 
 abstract class SpoonBasePublisher extends Publisher {
 
-    @Getter(AccessLevel.MODULE)
-    private transient Optional<String> imageName = Optional.absent();
-
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.BUILD;
@@ -38,7 +35,11 @@ abstract class SpoonBasePublisher extends Publisher {
         return super.prebuild(abstractBuild, listener);
     }
 
-    void beforePublish(SpoonBuild build, BuildListener listener) throws IllegalStateException {
+    /**
+     * Publishers may run concurrently or in the background for several builds, so the image of the build is returned
+     * to the caller rather than kept on the publisher.
+     */
+    String beforePublish(SpoonBuild build, BuildListener listener) throws IllegalStateException {
         Optional<Result> buildResult = Optional.fromNullable(build.getResult());
         checkState(buildResult.isPresent(), "%s requires a healthy build to continue. The result of current build is not available", Messages.toString(this.getClass()));
         checkState(buildResult.get().isBetterThan(Result.FAILURE), "%s requires a healthy build to continue. Result of the current build is %s.",
@@ -48,18 +49,17 @@ abstract class SpoonBasePublisher extends Publisher {
 
         checkState(builtImage.isPresent(), REQUIRE_PRESENT_S, "built image");
 
-        this.imageName = builtImage;
+        return builtImage.get();
     }
 
-    protected abstract void publish(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws IllegalStateException;
+    protected abstract void publish(AbstractBuild<?, ?> build, String image, Launcher launcher, BuildListener listener) throws IllegalStateException;
 
     @Override
     public final boolean perform(AbstractBuild<?, ?> abstractBuild, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
         try {
             SpoonBuild build = (SpoonBuild) abstractBuild;
-            this.beforePublish(build, listener);
-            this.publish(build, launcher, listener);
-
+            String image = this.beforePublish(build, listener);
+            this.publish(build, image, launcher, listener);
 
             return true;
         } catch (IllegalStateException ex) {
@@ -70,6 +70,20 @@ abstract class SpoonBasePublisher extends Publisher {
 
     SpoonClient createClient(AbstractBuild<?, ?> abstractBuild, Launcher launcher, BuildListener listener) {
         SpoonBuild build = (SpoonBuild) abstractBuild;
-        return SpoonClient.builder(build).launcher(launcher).listener(listener).build();
+        return SpoonClient.builder(build).pwd(getNodeRoot(build)).launcher(launcher).listener(listener).build();
+    }
+
+    /**
+     * Publishers work in the root directory of the node rather than the workspace, which the next build may reuse
+     * while a background publisher is still running.
+     */
+    static FilePath getNodeRoot(AbstractBuild<?, ?> build) throws IllegalStateException {
+        Node node = build.getBuiltOn();
+        checkState(node != null, "Node (%s) which built the image is no longer available", build.getBuiltOnStr());
+
+        FilePath rootPath = node.getRootPath();
+        checkState(rootPath != null, "Node (%s) which built the image is offline", build.getBuiltOnStr());
+
+        return rootPath;
     }
 }
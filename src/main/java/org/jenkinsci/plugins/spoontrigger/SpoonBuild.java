@@ -2,14 +2,24 @@ package org.jenkinsci.plugins.spoontrigger;
 
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import hudson.EnvVars;
+import hudson.Extension;
 import hudson.FilePath;
 import hudson.model.Build;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
 import lombok.Getter;
+import org.jenkinsci.plugins.spoontrigger.client.LoginSessionManager;
+
+import javax.annotation.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 public class SpoonBuild extends Build<SpoonProject, SpoonBuild> {
 
@@ -21,6 +31,11 @@ public class SpoonBuild extends Build<SpoonProject, SpoonBuild> {
     private Optional<FilePath> script = Optional.absent();
     @Getter
     private Optional<EnvVars> env = Optional.absent();
+    @Nullable
+    private List<String> baseImages;
+
+    @Nullable
+    private transient LoginSessionManager.Lease loginSession;
 
     public SpoonBuild(SpoonProject project) throws IOException {
         super(project);
@@ -43,6 +58,14 @@ public class SpoonBuild extends Build<SpoonProject, SpoonBuild> {
         this.builtImage = Optional.of(builtImage);
     }
 
+    List<String> getBaseImages() {
+        return (this.baseImages == null) ? Collections.<String>emptyList() : Collections.unmodifiableList(this.baseImages);
+    }
+
+    void setBaseImages(Collection<String> baseImages) {
+        this.baseImages = Lists.newArrayList(baseImages);
+    }
+
     void setScript(FilePath script) {
         this.script = Optional.of(script);
     }
@@ -50,4 +73,36 @@ public class SpoonBuild extends Build<SpoonProject, SpoonBuild> {
     void setEnv(EnvVars env) {
         this.env = Optional.of(env);
     }
+
+    synchronized void setLoginSession(LoginSessionManager.Lease loginSession) {
+        this.releaseLoginSession();
+        this.loginSession = loginSession;
+    }
+
+    @Nullable
+    synchronized LoginSessionManager.Lease detachLoginSession() {
+        LoginSessionManager.Lease detachedSession = this.loginSession;
+        this.loginSession = null;
+        return detachedSession;
+    }
+
+    synchronized void releaseLoginSession() {
+        if (this.loginSession != null) {
+            this.loginSession.release();
+            this.loginSession = null;
+        }
+    }
+
+    @Extension
+    public static final class LoginSessionListener extends RunListener<SpoonBuild> {
+
+        public LoginSessionListener() {
+            super(SpoonBuild.class);
+        }
+
+        @Override
+        public void onCompleted(SpoonBuild build, TaskListener listener) {
+            build.releaseLoginSession();
+        }
+    }
 }
@@ -1,44 +1,294 @@
 package org.jenkinsci.plugins.spoontrigger;
 
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import hudson.Extension;
 import hudson.Util;
 import hudson.model.AbstractProject;
 import hudson.model.Item;
+import hudson.model.Project;
 import hudson.triggers.Trigger;
 import hudson.triggers.TriggerDescriptor;
 import hudson.util.FormValidation;
-import hudson.util.SequentialExecutionQueue;
 import jenkins.model.Jenkins;
+import jenkins.util.Timer;
 import lombok.Getter;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.spoontrigger.git.Branch;
 import org.jenkinsci.plugins.spoontrigger.git.PushCause;
+import org.jenkinsci.plugins.spoontrigger.utils.GlobMatcher;
 import org.jenkinsci.plugins.spoontrigger.utils.Identity;
+import org.jenkinsci.plugins.spoontrigger.utils.KeyedSerialExecutor;
 import org.jenkinsci.plugins.spoontrigger.utils.Patterns;
 import org.jenkinsci.plugins.spoontrigger.validation.*;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 public class SpoonTrigger extends Trigger<AbstractProject<?, ?>> {
 
     private static final Logger LOGGER = Logger.getLogger(SpoonTrigger.class.getName());
 
+    private static final int MAX_ADAPTIVE_WINDOW_FACTOR = 4;
+    private static final String BRANCH_REF_PREFIX = "refs/heads/";
+    private static final String ANY_PATH_GLOB = "**";
+
     @Getter
     private final String repositoryUrl;
+    @Getter
+    private final int coalescingWindow;
+    @Getter
+    private final boolean adaptiveCoalescing;
+    @Getter
+    private final String includedBranches;
+    @Getter
+    private final String excludedBranches;
+    @Getter
+    private final String includedPaths;
+
+    private transient Map<String, CoalescedPush> pendingPushes;
+    private transient GlobMatcher includedBranchesMatcher;
+    private transient GlobMatcher excludedBranchesMatcher;
+    private transient GlobMatcher includedPathsMatcher;
+    private transient long rejectedPushCount;
 
     @DataBoundConstructor
-    public SpoonTrigger(String repositoryUrl) {
+    public SpoonTrigger(String repositoryUrl, int coalescingWindow, boolean adaptiveCoalescing,
+                        String includedBranches, String excludedBranches, String includedPaths) {
         this.repositoryUrl = Util.fixEmptyAndTrim(repositoryUrl);
+        this.coalescingWindow = Math.max(coalescingWindow, 0);
+        this.adaptiveCoalescing = adaptiveCoalescing;
+        this.includedBranches = Util.fixEmptyAndTrim(includedBranches);
+        this.excludedBranches = Util.fixEmptyAndTrim(excludedBranches);
+        this.includedPaths = Util.fixEmptyAndTrim(includedPaths);
+    }
+
+    private static Optional<String> toRelativeGlob(String baseFolder, @Nullable String folder) {
+        String normalizedFolder = Util.fixEmptyAndTrim(folder);
+        if (normalizedFolder == null) {
+            return toRelativeGlob(baseFolder);
+        }
+
+        normalizedFolder = normalizedFolder.replace('\\', '/');
+        if (baseFolder.isEmpty() || normalizedFolder.startsWith("/") || normalizedFolder.contains(":")) {
+            return toRelativeGlob(normalizedFolder);
+        }
+        return toRelativeGlob(baseFolder + "/" + normalizedFolder);
+    }
+
+    private static Optional<String> toRelativeGlob(@Nullable String folder) {
+        String normalizedFolder = Util.fixEmptyAndTrim(folder);
+        if (normalizedFolder == null) {
+            return Optional.of(ANY_PATH_GLOB);
+        }
+
+        normalizedFolder = normalizedFolder.replace('\\', '/');
+        while (normalizedFolder.startsWith("./")) {
+            normalizedFolder = normalizedFolder.substring(2);
+        }
+
+        boolean isAbsolute = normalizedFolder.startsWith("/") || normalizedFolder.contains(":") || normalizedFolder.contains("$");
+        if (isAbsolute || normalizedFolder.contains("..")) {
+            return Optional.absent();
+        }
+
+        while (normalizedFolder.endsWith("/")) {
+            normalizedFolder = normalizedFolder.substring(0, normalizedFolder.length() - 1);
+        }
+
+        if (normalizedFolder.isEmpty() || normalizedFolder.equals(".")) {
+            return Optional.of(ANY_PATH_GLOB);
+        }
+        return Optional.of(normalizedFolder + "/" + ANY_PATH_GLOB);
+    }
+
+    private static String getParentFolder(String filePath) {
+        String normalizedPath = filePath.replace('\\', '/');
+        int parentEnd = normalizedPath.lastIndexOf('/');
+        return (parentEnd < 0) ? "" : normalizedPath.substring(0, parentEnd);
+    }
+
+    private static String getBranchName(Branch branch) {
+        String name = branch.getName();
+        return name.startsWith(BRANCH_REF_PREFIX) ? name.substring(BRANCH_REF_PREFIX.length()) : name;
+    }
+
+    public synchronized boolean isBranchAccepted(Branch branch) {
+        if (this.includedBranchesMatcher == null) {
+            this.includedBranchesMatcher = GlobMatcher.compile(this.includedBranches);
+            this.excludedBranchesMatcher = GlobMatcher.compile(this.excludedBranches);
+        }
+
+        String branchName = getBranchName(branch);
+        boolean included = this.includedBranchesMatcher.isEmpty() || this.includedBranchesMatcher.matches(branchName);
+        if (included && !this.excludedBranchesMatcher.matches(branchName)) {
+            return true;
+        }
+
+        this.rejectedPushCount++;
+        return false;
+    }
+
+    public synchronized boolean isChangeAccepted(PushCause cause) {
+        Optional<Set<String>> changedPaths = cause.getChangedPaths();
+        if (!changedPaths.isPresent()) {
+            return true;
+        }
+
+        if (this.includedPathsMatcher == null) {
+            this.includedPathsMatcher = this.createIncludedPathsMatcher();
+        }
+
+        if (this.includedPathsMatcher.isEmpty()) {
+            return true;
+        }
+
+        for (String changedPath : changedPaths.get()) {
+            if (this.includedPathsMatcher.matches(changedPath)) {
+                return true;
+            }
+        }
+
+        this.rejectedPushCount++;
+        return false;
+    }
+
+    private GlobMatcher createIncludedPathsMatcher() {
+        if (this.includedPaths != null) {
+            return GlobMatcher.compile(this.includedPaths);
+        }
+
+        Optional<ScriptBuilder> scriptBuilder = this.getScriptBuilder();
+        if (!scriptBuilder.isPresent() || scriptBuilder.get().getScriptFilePath() == null) {
+            return GlobMatcher.empty();
+        }
+
+        String scriptFolder = getParentFolder(scriptBuilder.get().getScriptFilePath());
+        List<Optional<String>> defaultGlobs = Lists.newArrayList();
+        defaultGlobs.add(toRelativeGlob(scriptFolder));
+        if (scriptBuilder.get().getMountSettings() != null) {
+            defaultGlobs.add(toRelativeGlob(scriptFolder, scriptBuilder.get().getSourceFolder()));
+        }
+
+        List<String> globs = Lists.newArrayList();
+        for (Optional<String> glob : defaultGlobs) {
+            if (!glob.isPresent()) {
+                return GlobMatcher.empty();
+            }
+            globs.add(glob.get());
+        }
+        return GlobMatcher.compile(globs);
+    }
+
+    private Optional<ScriptBuilder> getScriptBuilder() {
+        if (!(super.job instanceof Project)) {
+            return Optional.absent();
+        }
+
+        Project<?, ?> project = (Project<?, ?>) super.job;
+        return Optional.fromNullable(project.getBuildersList().get(ScriptBuilder.class));
+    }
+
+    public synchronized long getRejectedPushCount() {
+        return this.rejectedPushCount;
+    }
+
+    private static String getCoalescingKey(PushCause cause) {
+        return String.format("%s#%s", cause.getRepository().getUrl().toLowerCase(Locale.ROOT), cause.getBranch().getName());
     }
 
     public void run(PushCause cause) {
-        ScheduledBuild runnable = new ScheduledBuild(super.job, cause);
+        if (this.coalescingWindow <= 0) {
+            this.queue(cause);
+            return;
+        }
+
+        final String key = getCoalescingKey(cause);
+        final long now = System.currentTimeMillis();
+        final long windowMillis = TimeUnit.SECONDS.toMillis(this.coalescingWindow);
+        synchronized (this) {
+            Map<String, CoalescedPush> pending = this.getPendingPushes();
+            CoalescedPush push = pending.get(key);
+            if (push != null) {
+                push.merge(cause, now, windowMillis, this.adaptiveCoalescing);
+                return;
+            }
+
+            pending.put(key, new CoalescedPush(cause, now + windowMillis, now + MAX_ADAPTIVE_WINDOW_FACTOR * windowMillis));
+        }
+
+        this.scheduleFlush(key, windowMillis);
+    }
+
+    private void queue(PushCause cause) {
+        ScheduledBuild scheduledBuild = new ScheduledBuild(super.job, cause);
         DescriptorImpl descriptor = this.getDescriptor();
-        descriptor.queueJob(runnable);
+        descriptor.queueJob(scheduledBuild);
+    }
+
+    private Map<String, CoalescedPush> getPendingPushes() {
+        if (this.pendingPushes == null) {
+            this.pendingPushes = Maps.newHashMap();
+        }
+        return this.pendingPushes;
+    }
+
+    private void scheduleFlush(final String key, long delayMillis) {
+        Timer.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush(key);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(String key) {
+        CoalescedPush push;
+        synchronized (this) {
+            push = this.getPendingPushes().get(key);
+            if (push == null) {
+                return;
+            }
+
+            long remainingMillis = push.getDeadline() - System.currentTimeMillis();
+            if (remainingMillis > 0) {
+                this.scheduleFlush(key, remainingMillis);
+                return;
+            }
+
+            this.getPendingPushes().remove(key);
+        }
+
+        if (push.getCount() > 1) {
+            String msg = String.format("Coalesced %d pushes to (%s) in (%s). Building the newest HEAD (%s)",
+                    push.getCount(), push.getCause().getBranch().getName(), push.getCause().getRepository(), push.getCause().getBranch().getHead());
+            LOGGER.info(msg);
+        }
+        this.queue(push.getCause());
+    }
+
+    private void flushAll() {
+        List<CoalescedPush> pushes;
+        synchronized (this) {
+            pushes = Lists.newArrayList(this.getPendingPushes().values());
+            this.getPendingPushes().clear();
+        }
+
+        for (CoalescedPush push : pushes) {
+            this.queue(push.getCause());
+        }
     }
 
     @Override
@@ -49,6 +299,48 @@ public class SpoonTrigger extends Trigger<AbstractProject<?, ?>> {
     @Override
     public void start(AbstractProject<?, ?> project, boolean newInstance) {
         super.start(project, newInstance);
+
+        SpoonTriggerIndex.getInstance().register(this);
+    }
+
+    @Override
+    public void stop() {
+        SpoonTriggerIndex.getInstance().unregister(this);
+        this.flushAll();
+
+        super.stop();
+    }
+
+    AbstractProject<?, ?> getProject() {
+        return super.job;
+    }
+
+    private static final class CoalescedPush {
+
+        @Getter
+        private PushCause cause;
+        @Getter
+        private long deadline;
+        @Getter
+        private int count;
+
+        private final long maxDeadline;
+
+        CoalescedPush(PushCause cause, long deadline, long maxDeadline) {
+            this.cause = cause;
+            this.deadline = deadline;
+            this.maxDeadline = maxDeadline;
+            this.count = 1;
+        }
+
+        void merge(PushCause newerCause, long now, long windowMillis, boolean adaptive) {
+            this.cause = newerCause;
+            this.count++;
+
+            if (adaptive) {
+                this.deadline = Math.min(Math.max(this.deadline, now + windowMillis), this.maxDeadline);
+            }
+        }
     }
 
     private static final class ScheduledBuild implements Runnable {
@@ -60,6 +352,10 @@ public class SpoonTrigger extends Trigger<AbstractProject<?, ?>> {
             this.cause = cause;
         }
 
+        String getProjectName() {
+            return this.project.getFullName();
+        }
+
         @Override
         public void run() {
             final boolean scheduled = this.project.scheduleBuild(this.cause);
@@ -86,18 +382,36 @@ public class SpoonTrigger extends Trigger<AbstractProject<?, ?>> {
                     new PredicateValidator<String>(Patterns.Predicates.REPOSITORY_NAME, "Parameter is not a correct URL to GitHub repository", Level.ERROR));
         }
 
-        private transient final SequentialExecutionQueue queue;
+        private static final int DISPATCHER_THREADS = Integer.getInteger(SpoonTrigger.class.getName() + ".dispatcherThreads", 4);
+        private static final int DISPATCHER_QUEUE_CAPACITY = Integer.getInteger(SpoonTrigger.class.getName() + ".dispatcherQueueCapacity", 256);
+
+        private transient final KeyedSerialExecutor dispatcher;
 
         private URL defaultHookUrl;
 
         public DescriptorImpl() {
             this.load();
 
-            this.queue = new SequentialExecutionQueue(Jenkins.MasterComputer.threadPoolForRemoting);
+            this.dispatcher = new KeyedSerialExecutor("SpoonTrigger.dispatcher", DISPATCHER_THREADS, DISPATCHER_QUEUE_CAPACITY);
+        }
+
+        /**
+         * Build requests of a project are dispatched one at a time. A request arriving while an earlier one of the same project
+         * is still waiting replaces it, which Jenkins would merge into the same queue item anyway.
+         */
+        void queueJob(ScheduledBuild scheduledBuild) {
+            this.dispatcher.execute(scheduledBuild.getProjectName(), scheduledBuild);
         }
 
-        public void queueJob(Runnable runnable) {
-            this.queue.execute(runnable);
+        JSONObject getDispatcherStatistics() {
+            JSONObject statistics = new JSONObject();
+            statistics.put("threads", this.dispatcher.getThreadCount());
+            statistics.put("active", this.dispatcher.getActiveCount());
+            statistics.put("queued", this.dispatcher.getQueuedCount());
+            statistics.put("completed", this.dispatcher.getCompletedCount());
+            statistics.put("merged", this.dispatcher.getMergedCount());
+            statistics.put("rejected", this.dispatcher.getRejectedCount());
+            return statistics;
         }
 
         public FormValidation doCheckRepositoryUrl(@QueryParameter String value) {
@@ -105,6 +419,14 @@ public class SpoonTrigger extends Trigger<AbstractProject<?, ?>> {
             return Validators.validate(REPOSITORY_STRING_VALIDATOR, repositoryUrl);
         }
 
+        public FormValidation doCheckCoalescingWindow(@QueryParameter String value) {
+            String coalescingWindow = Util.fixEmptyAndTrim(value);
+            if (coalescingWindow == null) {
+                return FormValidation.ok();
+            }
+            return FormValidation.validateNonNegativeInteger(coalescingWindow);
+        }
+
         public FormValidation doCheckHookUrl(@QueryParameter String value) {
             String rawWebHookUrl = Util.fixEmptyAndTrim(value);
             return Validators.validate(WEB_HOOK_VALIDATOR, rawWebHookUrl);
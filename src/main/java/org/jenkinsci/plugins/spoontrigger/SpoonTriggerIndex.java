@@ -0,0 +1,251 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import jenkins.model.Jenkins;
+import lombok.Data;
+import org.jenkinsci.plugins.spoontrigger.git.Repository;
+
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class SpoonTriggerIndex {
+
+    private static final SpoonTriggerIndex INSTANCE = new SpoonTriggerIndex();
+
+    private static final String WILDCARD = "*";
+    private static final String GIT_SUFFIX = ".git";
+    private static final Pattern SCHEME_PATTERN = Pattern.compile("^[a-z][a-z0-9+.-]*://");
+    private static final Pattern USER_INFO_PATTERN = Pattern.compile("^[^/@]+@");
+    private static final Pattern SCP_LIKE_PATTERN = Pattern.compile("^([^/:]+):(.*)$");
+    // the organization is everything before the project, so enterprise hosts may serve repositories under a path prefix
+    private static final Pattern REPOSITORY_KEY_PATTERN = Pattern.compile("^([^/]+(?:/[^/]+)+)/([^/]+)$");
+
+    private final SetMultimap<String, SpoonTrigger> repositoryTriggers = HashMultimap.create();
+    private final SetMultimap<String, SpoonTrigger> organizationTriggers = HashMultimap.create();
+    private final Map<SpoonTrigger, Key> registrations = Maps.newHashMap();
+
+    private SpoonTriggerIndex() {
+    }
+
+    public static SpoonTriggerIndex getInstance() {
+        return INSTANCE;
+    }
+
+    static Optional<Key> toKey(@Nullable String repositoryUrl) {
+        if (repositoryUrl == null) {
+            return Optional.absent();
+        }
+
+        String url = normalize(repositoryUrl);
+        if (url.isEmpty()) {
+            return Optional.absent();
+        }
+
+        Matcher matcher = REPOSITORY_KEY_PATTERN.matcher(url);
+        if (!matcher.find()) {
+            // without an owner there is no organization to match, but pushes to the same URL still trigger the project
+            return Optional.of(new Key(url, false));
+        }
+
+        String organization = matcher.group(1);
+        String project = matcher.group(2);
+        if (WILDCARD.equals(project)) {
+            return Optional.of(new Key(organization, true));
+        }
+
+        return Optional.of(new Key(String.format("%s/%s", organization, project), false));
+    }
+
+    /**
+     * Reduces a repository URL to host and path, so the https, ssh and scp-like (git@host:owner/repo) forms of a URL are equal.
+     */
+    private static String normalize(String repositoryUrl) {
+        String url = repositoryUrl.trim().toLowerCase(Locale.ROOT);
+
+        Matcher schemeMatcher = SCHEME_PATTERN.matcher(url);
+        boolean hasScheme = schemeMatcher.find();
+        if (hasScheme) {
+            url = url.substring(schemeMatcher.end());
+        }
+
+        url = USER_INFO_PATTERN.matcher(url).replaceFirst("");
+        if (!hasScheme) {
+            url = SCP_LIKE_PATTERN.matcher(url).replaceFirst("$1/$2");
+        }
+
+        url = stripTrailingSlashes(url);
+        if (url.endsWith(GIT_SUFFIX)) {
+            url = stripTrailingSlashes(url.substring(0, url.length() - GIT_SUFFIX.length()));
+        }
+        return url;
+    }
+
+    private static String stripTrailingSlashes(String url) {
+        int end = url.length();
+        while (end > 0 && url.charAt(end - 1) == '/') {
+            end--;
+        }
+        return url.substring(0, end);
+    }
+
+    private static Optional<String> toOrganizationKey(Key key) {
+        if (key.isWildcard()) {
+            return Optional.of(key.getValue());
+        }
+
+        int projectStart = key.getValue().lastIndexOf('/');
+        if (projectStart < 0) {
+            return Optional.absent();
+        }
+        return Optional.of(key.getValue().substring(0, projectStart));
+    }
+
+    public synchronized void register(SpoonTrigger trigger) {
+        this.unregister(trigger);
+
+        Optional<Key> key = toKey(trigger.getRepositoryUrl());
+        if (!key.isPresent()) {
+            return;
+        }
+
+        if (key.get().isWildcard()) {
+            this.organizationTriggers.put(key.get().getValue(), trigger);
+        } else {
+            this.repositoryTriggers.put(key.get().getValue(), trigger);
+        }
+        this.registrations.put(trigger, key.get());
+    }
+
+    public synchronized void unregister(SpoonTrigger trigger) {
+        Key key = this.registrations.remove(trigger);
+        if (key == null) {
+            return;
+        }
+
+        if (key.isWildcard()) {
+            this.organizationTriggers.remove(key.getValue(), trigger);
+        } else {
+            this.repositoryTriggers.remove(key.getValue(), trigger);
+        }
+    }
+
+    public synchronized void unregister(AbstractProject<?, ?> project) {
+        Iterator<Map.Entry<SpoonTrigger, Key>> registrationIt = this.registrations.entrySet().iterator();
+        while (registrationIt.hasNext()) {
+            Map.Entry<SpoonTrigger, Key> registration = registrationIt.next();
+            SpoonTrigger trigger = registration.getKey();
+            if (trigger.getProject() != project) {
+                continue;
+            }
+
+            Key key = registration.getValue();
+            if (key.isWildcard()) {
+                this.organizationTriggers.remove(key.getValue(), trigger);
+            } else {
+                this.repositoryTriggers.remove(key.getValue(), trigger);
+            }
+            registrationIt.remove();
+        }
+    }
+
+    public synchronized ImmutableSet<SpoonTrigger> lookup(Repository repository) {
+        Optional<Key> key = toKey(repository.getUrl());
+        if (!key.isPresent()) {
+            return ImmutableSet.of();
+        }
+
+        ImmutableSet.Builder<SpoonTrigger> triggers = ImmutableSet.builder();
+        triggers.addAll(this.repositoryTriggers.get(key.get().getValue()));
+
+        Optional<String> organizationKey = toOrganizationKey(key.get());
+        if (organizationKey.isPresent()) {
+            triggers.addAll(this.organizationTriggers.get(organizationKey.get()));
+        }
+        return triggers.build();
+    }
+
+    public synchronized ImmutableSet<SpoonTrigger> getTriggers() {
+        return ImmutableSet.copyOf(this.registrations.keySet());
+    }
+
+    public synchronized int size() {
+        return this.registrations.size();
+    }
+
+    synchronized void reindex(AbstractProject<?, ?> project) {
+        this.unregister(project);
+
+        SpoonTrigger trigger = project.getTrigger(SpoonTrigger.class);
+        if (trigger != null && trigger.getProject() == project) {
+            this.register(trigger);
+        }
+    }
+
+    synchronized void rebuild(Jenkins server) {
+        this.repositoryTriggers.clear();
+        this.organizationTriggers.clear();
+        this.registrations.clear();
+
+        for (AbstractProject<?, ?> project : server.getAllItems(AbstractProject.class)) {
+            this.reindex(project);
+        }
+    }
+
+    @Data
+    static final class Key {
+        private final String value;
+        private final boolean wildcard;
+    }
+
+    @Extension
+    public static final class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onLoaded() {
+            Jenkins server = Jenkins.getInstance();
+            if (server != null) {
+                INSTANCE.rebuild(server);
+            }
+        }
+
+        @Override
+        public void onCreated(Item item) {
+            if (item instanceof AbstractProject) {
+                INSTANCE.reindex((AbstractProject<?, ?>) item);
+            }
+        }
+
+        @Override
+        public void onUpdated(Item item) {
+            if (item instanceof AbstractProject) {
+                INSTANCE.reindex((AbstractProject<?, ?>) item);
+            }
+        }
+
+        @Override
+        public void onRenamed(Item item, String oldName, String newName) {
+            if (item instanceof AbstractProject) {
+                INSTANCE.reindex((AbstractProject<?, ?>) item);
+            }
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof AbstractProject) {
+                INSTANCE.unregister((AbstractProject<?, ?>) item);
+            }
+        }
+    }
+}
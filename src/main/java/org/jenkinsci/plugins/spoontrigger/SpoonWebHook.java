@@ -1,28 +1,31 @@
 package org.jenkinsci.plugins.spoontrigger;
 
-import com.google.common.base.Function;
-import com.google.common.base.Predicates;
+import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
-import com.google.common.collect.FluentIterable;
 import hudson.Extension;
 import hudson.Util;
 import hudson.model.AbstractProject;
 import hudson.model.RootAction;
 import hudson.model.UnprotectedRootAction;
 import jenkins.model.Jenkins;
-import net.sf.json.JSONException;
+import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 import org.jenkinsci.main.modules.instance_identity.InstanceIdentity;
 import org.jenkinsci.plugins.spoontrigger.git.PushCause;
-import org.jenkinsci.plugins.spoontrigger.git.Repository;
+import org.jenkinsci.plugins.spoontrigger.git.PushPayloadParser;
 import org.jenkinsci.plugins.spoontrigger.utils.Identity;
+import org.jenkinsci.plugins.spoontrigger.utils.UrlEncodedFieldInputStream;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.interceptor.RequirePOST;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.Locale;
+import java.util.logging.Logger;
 
 import static com.google.common.base.Preconditions.checkState;
 
@@ -30,12 +33,23 @@ import static com.google.common.base.Preconditions.checkState;
 public class SpoonWebHook implements UnprotectedRootAction {
 
     public static final int HTTP_OK = 200;
+    public static final int HTTP_ACCEPTED = 202;
+    public static final int HTTP_PAYLOAD_TOO_LARGE = 413;
+    public static final int HTTP_SERVICE_UNAVAILABLE = 503;
 
+    private static final Logger LOGGER = Logger.getLogger(SpoonWebHook.class.getName());
     private static final String URL_NAME = "spoon-webhook";
-    private static final Function<AbstractProject, SpoonTrigger> GET_SPOON_TRIGGER = new GetSpoonTrigger();
 
     static final String URL_VALIDATION_HEADER = "X-Jenkins-Validation";
     static final String X_INSTANCE_IDENTITY = "X-Instance-Identity";
+    static final String RETRY_AFTER_HEADER = "Retry-After";
+    static final String JSON_CONTENT_TYPE = "application/json";
+    static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+    static final String PAYLOAD_FIELD = "payload";
+    static final String X_GITHUB_DELIVERY = "X-GitHub-Delivery";
+
+    private final WebHookDispatcher dispatcher = new WebHookDispatcher();
+    private final DeliveryCache deliveryCache = new DeliveryCache();
 
     @Inject
     private InstanceIdentity identity;
@@ -60,17 +74,17 @@ public class SpoonWebHook implements UnprotectedRootAction {
     }
 
     @RequirePOST
-    public void doIndex(StaplerRequest request, StaplerResponse response) {
+    public void doIndex(StaplerRequest request, StaplerResponse response) throws IOException {
         if (isJenkinsValidation(request)) {
             response.setHeader(X_INSTANCE_IDENTITY, Identity.getValueOrDefault(this.identity));
             response.setStatus(HTTP_OK);
             return;
         }
 
-        String payload = getPayload(request);
+        boolean jsonContent = isJsonContent(request);
 
-        checkState(payload != null, "Not intended to be browsed interactively (must specify payload parameter)."
-                + " Ensure that the web hook Content-Type header is application/x-www-form-urlencoded");
+        checkState(jsonContent || isFormContent(request), "Not intended to be browsed interactively (must specify payload parameter)."
+                + " Ensure that the web hook Content-Type header is application/x-www-form-urlencoded or application/json");
 
         String eventName = getEventType(request);
         GitHubEvent event = GitHubEvent.from(eventName);
@@ -80,8 +94,16 @@ public class SpoonWebHook implements UnprotectedRootAction {
                 response.setStatus(HTTP_OK);
                 break;
             case PUSH:
-                PushCause cause = createCause(payload);
-                this.triggerBuilds(Jenkins.getInstance(), cause);
+                PushCause cause;
+                try {
+                    Reader payloadReader = jsonContent ? request.getReader() : getPayloadReader(request);
+                    cause = PushPayloadParser.parse(payloadReader);
+                } catch (PushPayloadParser.PayloadTooLargeException ex) {
+                    LOGGER.warning(ex.getMessage());
+                    response.setStatus(HTTP_PAYLOAD_TOO_LARGE);
+                    return;
+                }
+                this.enqueuePush(cause, getDeliveryId(request), response);
                 break;
             case UNKNOWN:
                 String msg = String.format("Spoon WebHook event type (%s) is not supported. Only push and support events are supported", eventName);
@@ -89,49 +111,107 @@ public class SpoonWebHook implements UnprotectedRootAction {
         }
     }
 
-    void triggerBuilds(Jenkins server, PushCause cause) {
-        for (SpoonTrigger trigger : getAllTriggers(server)) {
-            if(shouldRun(trigger, cause)) {
-                trigger.run(cause);
-            }
+    public void doStatistics(StaplerRequest request, StaplerResponse response) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+
+        JSONObject statistics = new JSONObject();
+        statistics.put("ingestion", this.dispatcher.getStatistics());
+        statistics.put("deliveries", this.deliveryCache.getStatistics());
+        statistics.put("triggers", getTriggerStatistics());
+        statistics.put("dispatcher", Jenkins.getInstance().getDescriptorByType(SpoonTrigger.DescriptorImpl.class).getDispatcherStatistics());
+
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().print(statistics.toString());
+    }
+
+    private static JSONArray getTriggerStatistics() {
+        JSONArray statistics = new JSONArray();
+        for (SpoonTrigger trigger : SpoonTriggerIndex.getInstance().getTriggers()) {
+            AbstractProject<?, ?> project = trigger.getProject();
+            JSONObject triggerStatistics = new JSONObject();
+            triggerStatistics.put("project", (project != null) ? project.getFullName() : null);
+            triggerStatistics.put("repositoryUrl", trigger.getRepositoryUrl());
+            triggerStatistics.put("rejectedPushes", trigger.getRejectedPushCount());
+            statistics.add(triggerStatistics);
         }
+        return statistics;
     }
 
-    private static Iterable<SpoonTrigger> getAllTriggers(Jenkins server) {
-        return FluentIterable.from(server.getAllItems(AbstractProject.class))
-                .transform(GET_SPOON_TRIGGER)
-                .filter(Predicates.notNull());
+    private void enqueuePush(final PushCause cause, @Nullable String deliveryId, StaplerResponse response) {
+        String deliveryKey = DeliveryCache.toKey(deliveryId, cause);
+        if (!this.deliveryCache.markSeen(deliveryKey)) {
+            LOGGER.info(String.format("Ignoring repeated delivery (%s) of push to (%s)", deliveryKey, cause.getRepository().getUrl()));
+            response.setStatus(HTTP_OK);
+            return;
+        }
+
+        boolean accepted = this.dispatcher.offer(new Runnable() {
+            @Override
+            public void run() {
+                triggerBuilds(cause);
+            }
+        });
+
+        if (accepted) {
+            response.setStatus(HTTP_ACCEPTED);
+            return;
+        }
+
+        this.deliveryCache.forget(deliveryKey);
+        LOGGER.warning(String.format("Spoon webhook queue is full (%d events). Push event rejected", this.dispatcher.getQueueDepth()));
+        response.setHeader(RETRY_AFTER_HEADER, String.valueOf(WebHookDispatcher.RETRY_AFTER_SECONDS));
+        response.setStatus(HTTP_SERVICE_UNAVAILABLE);
     }
 
-    private static PushCause createCause(String payload) throws IllegalStateException {
-        try {
-            JSONObject json = JSONObject.fromObject(payload);
-            String repository = json.getJSONObject("repository").getString("url");
-            String pusher = json.getJSONObject("pusher").getString("name");
-            String newHeadId = json.getString("after");
-            String branch = json.getString("ref");
-            return new PushCause(repository, pusher, branch, newHeadId);
-        } catch (JSONException ex) {
-            throw new IllegalStateException("Failed parsing web hook payload", ex);
+    void triggerBuilds(PushCause cause) {
+        for (SpoonTrigger trigger : SpoonTriggerIndex.getInstance().lookup(cause.getRepository())) {
+            if(shouldRun(trigger, cause)) {
+                trigger.run(cause);
+            }
         }
     }
 
     private static boolean shouldRun(SpoonTrigger trigger, PushCause cause) {
-        String triggerRepo = Util.fixNull(trigger.getRepositoryUrl());
-        Repository causeRepo = cause.getRepository();
-        return triggerRepo.equalsIgnoreCase(causeRepo.getUrl());
+        AbstractProject<?, ?> project = trigger.getProject();
+        return project != null && project.isBuildable()
+                && trigger.isBranchAccepted(cause.getBranch()) && trigger.isChangeAccepted(cause);
     }
 
     private static boolean isJenkinsValidation(StaplerRequest request) {
         return request.getHeader(URL_VALIDATION_HEADER) != null;
     }
 
+    private static boolean isJsonContent(StaplerRequest request) {
+        return hasContentType(request, JSON_CONTENT_TYPE);
+    }
+
+    private static boolean isFormContent(StaplerRequest request) {
+        return hasContentType(request, FORM_CONTENT_TYPE);
+    }
+
+    private static boolean hasContentType(StaplerRequest request, String expectedContentType) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith(expectedContentType);
+    }
+
     private static String getEventType(StaplerRequest request) {
         return request.getHeader("X-GitHub-Event");
     }
 
-    private static String getPayload(StaplerRequest request) {
-        return request.getParameter("payload");
+    @Nullable
+    private static String getDeliveryId(StaplerRequest request) {
+        return Util.fixEmptyAndTrim(request.getHeader(X_GITHUB_DELIVERY));
+    }
+
+    /**
+     * Decodes the payload field while the parser reads it, so its length limit applies before the body is buffered.
+     * Reading the field with getParameter would load the whole body into memory first. Fields around the payload
+     * are skipped within the same limit.
+     */
+    private static Reader getPayloadReader(StaplerRequest request) throws IOException {
+        UrlEncodedFieldInputStream payloadStream = new UrlEncodedFieldInputStream(request.getInputStream(), PAYLOAD_FIELD,
+                PushPayloadParser.DEFAULT_MAX_PAYLOAD_LENGTH);
+        return new InputStreamReader(payloadStream, Charsets.UTF_8);
     }
 
     private static enum GitHubEvent {
@@ -152,15 +232,4 @@ public class SpoonWebHook implements UnprotectedRootAction {
             }
         }
     }
-
-    private static final class GetSpoonTrigger implements Function<AbstractProject, SpoonTrigger> {
-        @Nullable
-        @Override
-        public SpoonTrigger apply(@Nullable AbstractProject project) {
-            if(project == null) {
-                return null;
-            }
-            return (SpoonTrigger) project.getTrigger(SpoonTrigger.class);
-        }
-    }
 }
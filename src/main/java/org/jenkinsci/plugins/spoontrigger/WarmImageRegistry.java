@@ -0,0 +1,164 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import hudson.Util;
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+import lombok.Getter;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the outcome of the last pull of each base image, per node, made by {@link BaseImageWarmer}.
+ * Entries are persisted under JENKINS_HOME.
+ */
+final class WarmImageRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger(WarmImageRegistry.class.getName());
+
+    private static final WarmImageRegistry INSTANCE = new WarmImageRegistry();
+
+    private static final Comparator<Entry> BY_IMAGE = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry left, Entry right) {
+            return left.getImage().compareToIgnoreCase(right.getImage());
+        }
+    };
+
+    private final Map<String, Entry> entries = Maps.newHashMap();
+
+    private boolean loaded;
+
+    private WarmImageRegistry() {
+    }
+
+    static WarmImageRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    private static String toKey(String nodeName, String image) {
+        return String.format("%s#%s", nodeName, image.toLowerCase(Locale.ROOT));
+    }
+
+    synchronized void markWarm(String nodeName, String image) {
+        this.put(new Entry(nodeName, image, System.currentTimeMillis(), null, false));
+    }
+
+    synchronized void markFailed(String nodeName, String image, String failure) {
+        this.put(new Entry(nodeName, image, System.currentTimeMillis(), failure, false));
+    }
+
+    /**
+     * Keeps a pulled image that was removed to free disk space on record, so it is not pulled again right away.
+     */
+    synchronized void markEvicted(String nodeName, String image) {
+        this.load();
+
+        if (this.entries.containsKey(toKey(nodeName, image))) {
+            this.put(new Entry(nodeName, image, System.currentTimeMillis(), null, true));
+        }
+    }
+
+    private void put(Entry entry) {
+        this.load();
+
+        this.entries.put(toKey(entry.getNodeName(), entry.getImage()), entry);
+        this.save();
+    }
+
+    @Nullable
+    synchronized Entry get(String nodeName, String image) {
+        this.load();
+
+        return this.entries.get(toKey(nodeName, image));
+    }
+
+    synchronized List<Entry> getEntries(String nodeName) {
+        this.load();
+
+        List<Entry> nodeEntries = Lists.newArrayList();
+        for (Entry entry : this.entries.values()) {
+            if (entry.getNodeName().equals(nodeName)) {
+                nodeEntries.add(entry);
+            }
+        }
+        Collections.sort(nodeEntries, BY_IMAGE);
+        return nodeEntries;
+    }
+
+    private XmlFile getConfigFile() {
+        File rootDir = Jenkins.getInstance().getRootDir();
+        return new XmlFile(Jenkins.XSTREAM, new File(rootDir, WarmImageRegistry.class.getName() + ".xml"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load() {
+        if (this.loaded) {
+            return;
+        }
+
+        this.loaded = true;
+        XmlFile configFile = this.getConfigFile();
+        if (!configFile.exists()) {
+            return;
+        }
+
+        try {
+            List<Entry> persistedEntries = (List<Entry>) configFile.read();
+            for (Entry entry : persistedEntries) {
+                this.entries.put(toKey(entry.getNodeName(), entry.getImage()), entry);
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to load warm Spoon images from " + configFile, ex);
+        }
+    }
+
+    private void save() {
+        XmlFile configFile = this.getConfigFile();
+        try {
+            configFile.write(Lists.newArrayList(this.entries.values()));
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to save warm Spoon images to " + configFile, ex);
+        }
+    }
+
+    public static final class Entry {
+        @Getter
+        private final String nodeName;
+        @Getter
+        private final String image;
+        @Getter
+        private final long pulledMillis;
+        @Nullable
+        @Getter
+        private final String failure;
+        @Getter
+        private final boolean evicted;
+
+        Entry(String nodeName, String image, long pulledMillis, @Nullable String failure, boolean evicted) {
+            this.nodeName = nodeName;
+            this.image = image;
+            this.pulledMillis = pulledMillis;
+            this.failure = failure;
+            this.evicted = evicted;
+        }
+
+        public boolean isWarm() {
+            return this.failure == null && !this.evicted;
+        }
+
+        public String getPulledAgo() {
+            return Util.getPastTimeString(System.currentTimeMillis() - this.pulledMillis);
+        }
+    }
+}
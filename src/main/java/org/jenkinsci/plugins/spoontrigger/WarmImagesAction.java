@@ -0,0 +1,52 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Computer;
+import hudson.model.TransientComputerActionFactory;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lists the base images {@link BaseImageWarmer} has pulled to a node, and the ones it failed to pull.
+ */
+public class WarmImagesAction implements Action {
+
+    @Getter
+    private final Computer computer;
+
+    public WarmImagesAction(Computer computer) {
+        this.computer = computer;
+    }
+
+    public List<WarmImageRegistry.Entry> getEntries() {
+        return WarmImageRegistry.getInstance().getEntries(this.computer.getName());
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "package.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Spoon Base Images";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "spoonBaseImages";
+    }
+
+    @Extension
+    public static final class ActionFactory extends TransientComputerActionFactory {
+
+        @Override
+        public Collection<? extends Action> createFor(Computer computer) {
+            return Collections.singletonList(new WarmImagesAction(computer));
+        }
+    }
+}
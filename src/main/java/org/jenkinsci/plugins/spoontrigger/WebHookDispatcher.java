@@ -0,0 +1,107 @@
+package org.jenkinsci.plugins.spoontrigger;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import net.sf.json.JSONObject;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+final class WebHookDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(WebHookDispatcher.class.getName());
+
+    static final int QUEUE_CAPACITY = Integer.getInteger(WebHookDispatcher.class.getName() + ".queueCapacity", 512);
+    static final int POOL_SIZE = Integer.getInteger(WebHookDispatcher.class.getName() + ".poolSize", 2);
+    static final int RETRY_AFTER_SECONDS = Integer.getInteger(WebHookDispatcher.class.getName() + ".retryAfterSeconds", 30);
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+    WebHookDispatcher() {
+        this.executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                new NamingThreadFactory(new DaemonThreadFactory(), "SpoonWebHook.dispatcher"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    boolean offer(Runnable event) {
+        try {
+            this.executor.execute(new TimedEvent(event, System.nanoTime()));
+            this.acceptedCount.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException ex) {
+            this.rejectedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    int getQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+
+    long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    long getAverageLatencyMillis() {
+        long dispatched = this.dispatchedCount.get();
+        return (dispatched == 0) ? 0 : this.totalLatencyMillis.get() / dispatched;
+    }
+
+    JSONObject getStatistics() {
+        JSONObject statistics = new JSONObject();
+        statistics.put("queueCapacity", QUEUE_CAPACITY);
+        statistics.put("queueDepth", this.getQueueDepth());
+        statistics.put("activeDispatchers", this.executor.getActiveCount());
+        statistics.put("accepted", this.acceptedCount.get());
+        statistics.put("rejected", this.getRejectedCount());
+        statistics.put("dispatched", this.dispatchedCount.get());
+        statistics.put("averageLatencyMillis", this.getAverageLatencyMillis());
+        statistics.put("maxLatencyMillis", this.maxLatencyMillis.get());
+        return statistics;
+    }
+
+    private void recordLatency(long latencyMillis) {
+        this.dispatchedCount.incrementAndGet();
+        this.totalLatencyMillis.addAndGet(latencyMillis);
+
+        long currentMax = this.maxLatencyMillis.get();
+        while (latencyMillis > currentMax && !this.maxLatencyMillis.compareAndSet(currentMax, latencyMillis)) {
+            currentMax = this.maxLatencyMillis.get();
+        }
+    }
+
+    private final class TimedEvent implements Runnable {
+
+        private final Runnable event;
+        private final long enqueueTime;
+
+        TimedEvent(Runnable event, long enqueueTime) {
+            this.event = event;
+            this.enqueueTime = enqueueTime;
+        }
+
+        @Override
+        public void run() {
+            long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.enqueueTime);
+            recordLatency(latencyMillis);
+
+            try {
+                this.event.run();
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Failed to dispatch Spoon webhook event", ex);
+            }
+        }
+    }
+}
@@ -2,17 +2,40 @@ package org.jenkinsci.plugins.spoontrigger.client;
 
 import hudson.util.ArgumentListBuilder;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 abstract class BaseCommand {
 
     static final String SPOON_CLIENT = "spoon";
+    static final long NO_TIMEOUT = 0;
+    static final long PROBE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
 
     private final ArgumentListBuilder argumentList;
+    private long timeoutMillis = NO_TIMEOUT;
 
     BaseCommand(ArgumentListBuilder argumentList) {
         this.argumentList = argumentList;
     }
 
+    static String getName(ArgumentListBuilder argumentList) {
+        List<String> args = argumentList.toList();
+        return (args.size() > 1) ? args.get(1) : args.get(0);
+    }
+
     ArgumentListBuilder getArgumentList() {
         return argumentList;
     }
+
+    String getName() {
+        return getName(this.argumentList);
+    }
+
+    long getTimeoutMillis() {
+        return this.timeoutMillis;
+    }
+
+    void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
 }
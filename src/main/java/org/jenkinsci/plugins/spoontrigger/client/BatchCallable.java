@@ -0,0 +1,111 @@
+package org.jenkinsci.plugins.spoontrigger.client;
+
+import com.google.common.base.Optional;
+import com.google.common.io.Closeables;
+import com.google.common.io.CountingOutputStream;
+import hudson.EnvVars;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.remoting.RemoteOutputStream;
+import hudson.util.StreamTaskListener;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Runs an ordered list of spoon commands on the node owning the channel, stopping at the first failure.
+ * Output is parsed here, so only the console log and the extracted groups cross the channel.
+ */
+final class BatchCallable extends MasterToSlaveCallable<CommandBatch.BatchResult, IOException> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<CommandBatch.Step> steps;
+    private final long[] timeoutsMillis;
+    private final EnvVars env;
+    private final String pwd;
+    private final String charsetName;
+    private final OutputStream out;
+    private final boolean compressOutput;
+
+    BatchCallable(List<CommandBatch.Step> steps, long[] timeoutsMillis, EnvVars env, String pwd, Charset charset, OutputStream out, boolean compressOutput) {
+        this.steps = steps;
+        this.timeoutsMillis = timeoutsMillis;
+        this.env = env;
+        this.pwd = pwd;
+        this.charsetName = charset.name();
+        this.out = new RemoteOutputStream(out);
+        this.compressOutput = compressOutput;
+    }
+
+    @Override
+    public CommandBatch.BatchResult call() throws IOException {
+        Charset charset = Charset.forName(this.charsetName);
+        OutputStream channelOut = this.compressOutput ? new CompressedChunkOutputStream(this.out) : this.out;
+        CountingOutputStream rawOut = new CountingOutputStream(channelOut);
+        StreamTaskListener listener = new StreamTaskListener(rawOut, charset);
+        PrintStream logger = listener.getLogger();
+        Launcher launcher = new Launcher.LocalLauncher(listener);
+
+        CommandBatch.BatchResult result = new CommandBatch.BatchResult(this.steps.size());
+        try {
+            for (int stepIndex = 0; stepIndex < this.steps.size(); ++stepIndex) {
+                CommandBatch.Step step = this.steps.get(stepIndex);
+                PatternGroupExtractorOutputStream extractor = null;
+                InstructionTimingOutputStream timer = null;
+                OutputStream stepOut = new ProgressFilterOutputStream(logger);
+                if (step.isTimed()) {
+                    timer = new InstructionTimingOutputStream(stepOut, charset);
+                    stepOut = timer;
+                }
+
+                if (step.getGroupValuePattern() != null) {
+                    extractor = new PatternGroupExtractorOutputStream(step.getGroupValuePattern(), step.getGroupValueAnchor(), stepOut, charset);
+                    stepOut = extractor;
+                }
+
+                long startTime = System.currentTimeMillis();
+                ProcessTimeouts.Outcome outcome;
+                try {
+                    Proc proc = launcher.launch().cmds(step.getArgumentList()).envs(this.env).pwd(new File(this.pwd))
+                            .stdout(stepOut).start();
+                    outcome = ProcessTimeouts.join(proc, this.timeoutsMillis[stepIndex]);
+                } finally {
+                    final boolean swallowException = true;
+                    Closeables.close(stepOut, swallowException);
+                }
+                long durationMillis = System.currentTimeMillis() - startTime;
+
+                if (outcome.timedOut) {
+                    result.recordTimeout(stepIndex, durationMillis, this.timeoutsMillis[stepIndex]);
+                    break;
+                }
+
+                if (timer != null) {
+                    result.addInstructionTimings(timer.getTimings());
+                }
+
+                Optional<String> group = (extractor == null) ? Optional.<String>absent() : extractor.getGroup();
+                result.record(stepIndex, outcome.exitCode, group.orNull(), durationMillis);
+                if (outcome.exitCode != 0) {
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            throw new IOException("Execution of batched spoon commands was interrupted", ex);
+        } finally {
+            logger.flush();
+            if (this.compressOutput) {
+                channelOut.close();
+            }
+        }
+
+        result.setRawOutputBytes(rawOut.getCount());
+        return result;
+    }
+}
@@ -15,17 +15,23 @@ import static org.jenkinsci.plugins.spoontrigger.Messages.*;
 public final class BuildCommand extends StringPatternCommand {
 
     private static final Pattern OUTPUT_IMAGE_PATTERN = Pattern.compile("Output\\s+image:\\s+(\\S+)", Pattern.CASE_INSENSITIVE);
+    private static final String OUTPUT_IMAGE_ANCHOR = "image:";
 
     private BuildCommand(ArgumentListBuilder argumentList) {
-        super(argumentList, OUTPUT_IMAGE_PATTERN);
+        super(argumentList, OUTPUT_IMAGE_PATTERN, OUTPUT_IMAGE_ANCHOR);
     }
 
     public static CommandBuilder builder() {
         return new CommandBuilder();
     }
 
+    public String getCommandLine() {
+        return this.getArgumentList().toString();
+    }
+
     public static class CommandBuilder {
 
+        private long timeoutMillis = NO_TIMEOUT;
         private Optional<String> image = Optional.absent();
         private Optional<FilePath> script = Optional.absent();
         private Optional<String> vmVersion = Optional.absent();
@@ -97,6 +103,13 @@ public final class BuildCommand extends StringPatternCommand {
             return this;
         }
 
+        public CommandBuilder timeout(long timeoutMillis) {
+            checkArgument(timeoutMillis >= 0, "timeout (%s) must not be negative", timeoutMillis);
+
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
         public BuildCommand build() {
             checkState(this.script.isPresent(), REQUIRE_PRESENT_S, "script");
 
@@ -139,7 +152,9 @@ public final class BuildCommand extends StringPatternCommand {
             }
 
             buildArgs.addQuoted(this.script.get().getRemote());
-            return new BuildCommand(buildArgs);
+            BuildCommand command = new BuildCommand(buildArgs);
+            command.setTimeoutMillis(this.timeoutMillis);
+            return command;
         }
     }
 }
@@ -0,0 +1,55 @@
+package org.jenkinsci.plugins.spoontrigger.client;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+public final class CapabilityCache {
+
+    private static final long TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(CapabilityCache.class.getName() + ".timeToLiveMinutes", 60));
+
+    private static final ConcurrentMap<String, SpoonCapabilities> CAPABILITIES = Maps.newConcurrentMap();
+
+    public static SpoonCapabilities get(SpoonClient client) throws IllegalStateException {
+        Optional<SpoonCapabilities> cachedCapabilities = getIfFresh(client.getNodeName());
+        if (cachedCapabilities.isPresent()) {
+            return cachedCapabilities.get();
+        }
+
+        SpoonCapabilities capabilities = probe(client);
+        CAPABILITIES.put(client.getNodeName(), capabilities);
+        return capabilities;
+    }
+
+    public static Optional<SpoonCapabilities> getIfFresh(String nodeName) {
+        SpoonCapabilities capabilities = CAPABILITIES.get(nodeName);
+        if (capabilities != null && capabilities.isFresh(System.currentTimeMillis(), TIME_TO_LIVE_MILLIS)) {
+            return Optional.of(capabilities);
+        }
+        return Optional.absent();
+    }
+
+    public static void invalidate(String nodeName) {
+        CAPABILITIES.remove(nodeName);
+    }
+
+    private static SpoonCapabilities probe(SpoonClient client) throws IllegalStateException {
+        VersionCommand versionCmd = VersionCommand.builder().build();
+        String version = versionCmd.run(client);
+
+        Set<String> flags;
+        try {
+            HelpCommand helpCmd = HelpCommand.builder().command("build").build();
+            flags = helpCmd.run(client);
+        } catch (IllegalStateException ex) {
+            flags = ImmutableSet.of();
+        }
+
+        return new SpoonCapabilities(version, flags, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,213 @@
+package org.jenkinsci.plugins.spoontrigger.client;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import hudson.util.ArgumentListBuilder;
+import lombok.Getter;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static org.jenkinsci.plugins.spoontrigger.Messages.REQUIRE_NOT_NULL_S;
+
+public final class CommandBatch {
+
+    private final List<Step> steps;
+
+    private CommandBatch(List<Step> steps) {
+        this.steps = steps;
+    }
+
+    public static BatchBuilder builder() {
+        return new BatchBuilder();
+    }
+
+    public BatchResult run(SpoonClient client) throws IllegalStateException {
+        BatchResult result = client.launchBatch(this.steps);
+
+        for (int stepIndex = 0; stepIndex < this.steps.size(); ++stepIndex) {
+            Step step = this.steps.get(stepIndex);
+            if (step.getGroupValuePattern() != null && !result.getGroup(stepIndex).isPresent()) {
+                String errMsg = String.format("Result was not found in output from command (%s) execution ", step.getArgumentList().toString());
+                throw new IllegalStateException(errMsg);
+            }
+        }
+        return result;
+    }
+
+    static final class Step implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Getter
+        private final ArgumentListBuilder argumentList;
+        @Getter
+        @Nullable
+        private final Pattern groupValuePattern;
+        @Getter
+        @Nullable
+        private final String groupValueAnchor;
+        @Getter
+        private final boolean timed;
+        @Getter
+        private final long timeoutMillis;
+
+        Step(BaseCommand command, @Nullable Pattern groupValuePattern, @Nullable String groupValueAnchor, boolean timed) {
+            this.argumentList = command.getArgumentList();
+            this.timeoutMillis = command.getTimeoutMillis();
+            this.groupValuePattern = groupValuePattern;
+            this.groupValueAnchor = groupValueAnchor;
+            this.timed = timed;
+        }
+
+        String getName() {
+            return BaseCommand.getName(this.argumentList);
+        }
+    }
+
+    public static final class BatchResult implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] exitCodes;
+        private final String[] groups;
+        private final long[] durationsMillis;
+        private final long[] timeoutsMillis;
+        private final boolean[] timedOut;
+
+        @Getter
+        private int executedCount;
+        @Getter
+        private long rawOutputBytes;
+        @Getter
+        private ImmutableList<InstructionTiming> instructionTimings = ImmutableList.of();
+        @Getter
+        private long transferredOutputBytes;
+
+        BatchResult(int stepCount) {
+            this.exitCodes = new int[stepCount];
+            this.groups = new String[stepCount];
+            this.durationsMillis = new long[stepCount];
+            this.timeoutsMillis = new long[stepCount];
+            this.timedOut = new boolean[stepCount];
+        }
+
+        void record(int stepIndex, int exitCode, @Nullable String group, long durationMillis) {
+            this.exitCodes[stepIndex] = exitCode;
+            this.groups[stepIndex] = group;
+            this.durationsMillis[stepIndex] = durationMillis;
+            this.executedCount = stepIndex + 1;
+        }
+
+        void recordTimeout(int stepIndex, long durationMillis, long timeoutMillis) {
+            this.record(stepIndex, -1, null, durationMillis);
+            this.timeoutsMillis[stepIndex] = timeoutMillis;
+            this.timedOut[stepIndex] = true;
+        }
+
+        void addInstructionTimings(List<InstructionTiming> timings) {
+            this.instructionTimings = ImmutableList.<InstructionTiming>builder().addAll(this.instructionTimings).addAll(timings).build();
+        }
+
+        void setRawOutputBytes(long rawOutputBytes) {
+            this.rawOutputBytes = rawOutputBytes;
+        }
+
+        void setTransferredOutputBytes(long transferredOutputBytes) {
+            this.transferredOutputBytes = transferredOutputBytes;
+        }
+
+        public int getStepCount() {
+            return this.exitCodes.length;
+        }
+
+        public int getExitCode(int stepIndex) {
+            checkArgument(stepIndex < this.executedCount, "step (%s) was not executed", stepIndex);
+
+            return this.exitCodes[stepIndex];
+        }
+
+        public long getDurationMillis(int stepIndex) {
+            checkArgument(stepIndex < this.executedCount, "step (%s) was not executed", stepIndex);
+
+            return this.durationsMillis[stepIndex];
+        }
+
+        public boolean isTimedOut(int stepIndex) {
+            checkArgument(stepIndex < this.executedCount, "step (%s) was not executed", stepIndex);
+
+            return this.timedOut[stepIndex];
+        }
+
+        long getTimeoutMillis(int stepIndex) {
+            return this.timeoutsMillis[stepIndex];
+        }
+
+        public Optional<String> getGroup(int stepIndex) {
+            checkArgument(stepIndex < this.executedCount, "step (%s) was not executed", stepIndex);
+
+            return Optional.fromNullable(this.groups[stepIndex]);
+        }
+
+        public Optional<Integer> getFailedStep() {
+            for (int stepIndex = 0; stepIndex < this.executedCount; ++stepIndex) {
+                if (this.exitCodes[stepIndex] != 0 || this.timedOut[stepIndex]) {
+                    return Optional.of(stepIndex);
+                }
+            }
+            return Optional.absent();
+        }
+    }
+
+    public static final class BatchBuilder {
+
+        private final ImmutableList.Builder<Step> steps = ImmutableList.builder();
+        private int stepCount;
+
+        public BatchBuilder add(LoginCommand command) {
+            return this.add((VoidCommand) command);
+        }
+
+        public BatchBuilder add(VersionCommand command) {
+            return this.add((StringPatternCommand) command);
+        }
+
+        public BatchBuilder add(BuildCommand command) {
+            checkArgument(command != null, REQUIRE_NOT_NULL_S, "command");
+
+            return this.add(new Step(command, command.getGroupValuePattern(), command.getGroupValueAnchor(), true));
+        }
+
+        BatchBuilder add(VoidCommand command) {
+            checkArgument(command != null, REQUIRE_NOT_NULL_S, "command");
+
+            return this.add(new Step(command, null, null, false));
+        }
+
+        BatchBuilder add(StringPatternCommand command) {
+            checkArgument(command != null, REQUIRE_NOT_NULL_S, "command");
+
+            return this.add(new Step(command, command.getGroupValuePattern(), command.getGroupValueAnchor(), false));
+        }
+
+        private BatchBuilder add(Step step) {
+            this.steps.add(step);
+            this.stepCount++;
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return this.stepCount == 0;
+        }
+
+        public CommandBatch build() {
+            checkState(this.stepCount > 0, "batch must contain at least one command");
+
+            return new CommandBatch(this.steps.build());
+        }
+    }
+}
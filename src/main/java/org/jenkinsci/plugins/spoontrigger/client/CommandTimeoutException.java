@@ -0,0 +1,11 @@
+package org.jenkinsci.plugins.spoontrigger.client;
+
+import hudson.Util;
+
+public class CommandTimeoutException extends IllegalStateException {
+
+    public CommandTimeoutException(String command, long timeoutMillis) {
+        super(String.format("Command (%s) did not complete within %s. Its process tree was killed",
+                command, Util.getTimeSpanString(timeoutMillis)));
+    }
+}
@@ -0,0 +1,115 @@
+package org.jenkinsci.plugins.spoontrigger.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Receives chunks written by {@link CompressedChunkOutputStream}, split arbitrarily across writes,
+ * and writes the inflated output to the underlying stream.
+ */
+final class CompressedChunkDecoderOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final Inflater inflater = new Inflater();
+    private final byte[] header = new byte[CompressedChunkOutputStream.HEADER_LENGTH];
+    private final byte[] chunk = new byte[CompressedChunkOutputStream.CHUNK_SIZE];
+
+    private byte[] payload = new byte[CompressedChunkOutputStream.CHUNK_SIZE];
+    private int headerLength;
+    private int payloadLength;
+    private int rawLength;
+    private int compressedLength;
+    private boolean closed;
+
+    CompressedChunkDecoderOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xff) << 24) | ((buffer[offset + 1] & 0xff) << 16)
+                | ((buffer[offset + 2] & 0xff) << 8) | (buffer[offset + 3] & 0xff);
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        this.write(new byte[]{(byte) value}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int copied;
+            if (this.headerLength < this.header.length) {
+                copied = Math.min(length, this.header.length - this.headerLength);
+                System.arraycopy(bytes, offset, this.header, this.headerLength, copied);
+                this.headerLength += copied;
+                if (this.headerLength == this.header.length) {
+                    this.onHeader();
+                }
+            } else {
+                copied = Math.min(length, this.compressedLength - this.payloadLength);
+                System.arraycopy(bytes, offset, this.payload, this.payloadLength, copied);
+                this.payloadLength += copied;
+            }
+
+            offset += copied;
+            length -= copied;
+            if (this.headerLength == this.header.length && this.payloadLength == this.compressedLength) {
+                this.onPayload();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+        this.inflater.end();
+        this.flush();
+    }
+
+    private void onHeader() {
+        this.rawLength = readInt(this.header, 0);
+        this.compressedLength = readInt(this.header, 4);
+        checkState(0 < this.rawLength && this.rawLength <= this.chunk.length, "Invalid chunk length (%s)", this.rawLength);
+        checkState(0 < this.compressedLength, "Invalid compressed chunk length (%s)", this.compressedLength);
+
+        if (this.payload.length < this.compressedLength) {
+            this.payload = new byte[this.compressedLength];
+        }
+        this.payloadLength = 0;
+    }
+
+    private void onPayload() throws IOException {
+        this.inflater.reset();
+        this.inflater.setInput(this.payload, 0, this.compressedLength);
+
+        int inflated = 0;
+        try {
+            while (inflated < this.rawLength && !this.inflater.finished()) {
+                int count = this.inflater.inflate(this.chunk, inflated, this.rawLength - inflated);
+                checkState(count > 0 || !this.inflater.needsInput(), "Truncated compressed chunk");
+                inflated += count;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Failed to inflate compressed output chunk", ex);
+        }
+
+        this.out.write(this.chunk, 0, inflated);
+        this.headerLength = 0;
+        this.payloadLength = 0;
+        this.compressedLength = 0;
+    }
+}
@@ -0,0 +1,152 @@
+package org.jenkinsci.plugins.spoontrigger.client;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+
+/**
+ * Buffers output and writes it as independently deflated chunks, each prefixed with its raw and compressed length.
+ * A chunk is emitted when the buffer is full, on flush, or once the flush interval has elapsed, so output written
+ * before a quiet period reaches the console without waiting for the next write.
+ * Closing the stream emits the last chunk but leaves the underlying stream open.
+ *
+ * @see CompressedChunkDecoderOutputStream
+ */
+final class CompressedChunkOutputStream extends OutputStream {
+
+    static final int CHUNK_SIZE = 64 * 1024;
+    static final int HEADER_LENGTH = 8;
+
+    private static final Logger LOGGER = Logger.getLogger(CompressedChunkOutputStream.class.getName());
+
+    private static final long FLUSH_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "SpoonClient.outputFlush"));
+
+    private final OutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private byte[] frame = new byte[HEADER_LENGTH + CHUNK_SIZE + CHUNK_SIZE / 100 + 64];
+
+    private int chunkLength;
+    private long lastFlushTime = System.currentTimeMillis();
+    private boolean closed;
+    private final ScheduledFuture<?> flushTask;
+
+    CompressedChunkOutputStream(OutputStream out) {
+        this.out = out;
+        this.flushTask = FLUSHER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushPending();
+            }
+        }, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    @Override
+    public synchronized void write(int value) throws IOException {
+        if (this.chunkLength == CHUNK_SIZE) {
+            this.writeChunk();
+        }
+        this.chunk[this.chunkLength++] = (byte) value;
+        this.flushIfDue();
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (this.chunkLength == CHUNK_SIZE) {
+                this.writeChunk();
+            }
+
+            int copied = Math.min(length, CHUNK_SIZE - this.chunkLength);
+            System.arraycopy(bytes, offset, this.chunk, this.chunkLength, copied);
+            this.chunkLength += copied;
+            offset += copied;
+            length -= copied;
+        }
+        this.flushIfDue();
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        this.writeChunk();
+        this.out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+        this.flushTask.cancel(false);
+        try {
+            this.flush();
+        } finally {
+            this.deflater.end();
+        }
+    }
+
+    private void flushIfDue() throws IOException {
+        if (System.currentTimeMillis() - this.lastFlushTime >= FLUSH_INTERVAL_MILLIS) {
+            this.flush();
+        }
+    }
+
+    private synchronized void flushPending() {
+        if (this.closed || this.chunkLength == 0) {
+            return;
+        }
+
+        try {
+            this.flushIfDue();
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Failed to flush buffered spoon output", ex);
+            this.flushTask.cancel(false);
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        this.lastFlushTime = System.currentTimeMillis();
+        if (this.chunkLength == 0) {
+            return;
+        }
+
+        this.deflater.reset();
+        this.deflater.setInput(this.chunk, 0, this.chunkLength);
+        this.deflater.finish();
+
+        int compressedLength = 0;
+        while (!this.deflater.finished()) {
+            if (HEADER_LENGTH + compressedLength == this.frame.length) {
+                this.frame = Arrays.copyOf(this.frame, this.frame.length * 2);
+            }
+            compressedLength += this.deflater.deflate(this.frame, HEADER_LENGTH + compressedLength,
+                    this.frame.length - HEADER_LENGTH - compressedLength);
+        }
+
+        writeInt(this.frame, 0, this.chunkLength);
+        writeInt(this.frame, 4, compressedLength);
+        this.out.write(this.frame, 0, HEADER_LENGTH + compressedLength);
+        this.chunkLength = 0;
+    }
+}
@@ -21,6 +21,7 @@ public final class ExportCommand extends VoidCommand {
 
     public static final class CommandBuilder {
 
+        private long timeoutMillis = NO_TIMEOUT;
         private Optional<FilePath> outputFile = Optional.absent();
         private Optional<String> image = Optional.absent();
 
@@ -38,13 +39,22 @@ public final class ExportCommand extends VoidCommand {
             return this;
         }
 
+        public CommandBuilder timeout(long timeoutMillis) {
+            checkArgument(timeoutMillis >= 0, "timeout (%s) must not be negative", timeoutMillis);
+
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
         public ExportCommand build() {
             checkState(this.image.isPresent(), REQUIRE_PRESENT_S, "image");
             checkState(this.outputFile.isPresent(), REQUIRE_PRESENT_S, "outputFile");
 
             ArgumentListBuilder buildArgs = new ArgumentListBuilder(SPOON_CLIENT, "export", this.image.get());
             buildArgs.addQuoted(this.outputFile.get().getRemote());
-            return new ExportCommand(buildArgs);
+            ExportCommand command = new ExportCommand(buildArgs);
+            command.setTimeoutMillis(this.timeoutMillis);
+            return command;
         }
     }
 }
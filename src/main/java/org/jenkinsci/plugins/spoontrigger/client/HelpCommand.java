@@ -0,0 +1,93 @@
+package org.jenkinsci.plugins.spoontrigger.client;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import hudson.console.LineTransformationOutputStream;
+import hudson.util.ArgumentListBuilder;
+import org.jenkinsci.plugins.spoontrigger.utils.Patterns;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.jenkinsci.plugins.spoontrigger.Messages.REQUIRE_SINGLE_WORD_SP;
+
+public final class HelpCommand extends BaseCommand {
+
+    private static final Pattern FLAG_PATTERN = Pattern.compile("(--[a-zA-Z][\\w-]*)");
+
+    private HelpCommand(ArgumentListBuilder argumentList) {
+        super(argumentList);
+    }
+
+    public static CommandBuilder builder() {
+        return new CommandBuilder();
+    }
+
+    public Set<String> run(SpoonClient client) throws IllegalStateException {
+        FlagCollectorOutputStream outputStream = new FlagCollectorOutputStream(client.getLogger(), client.getCharset());
+        try {
+            client.launch(this, outputStream);
+            return ImmutableSet.copyOf(outputStream.flags);
+        } finally {
+            try {
+                final boolean swallowException = true;
+                Closeables.close(outputStream, swallowException);
+            } catch (IOException ex) {
+                // no-op
+            }
+        }
+    }
+
+    public static final class CommandBuilder {
+
+        private Optional<String> command = Optional.absent();
+
+        public CommandBuilder command(String command) {
+            checkArgument(Patterns.isSingleWord(command), REQUIRE_SINGLE_WORD_SP, "command", command);
+
+            this.command = Optional.of(command.trim());
+            return this;
+        }
+
+        public HelpCommand build() {
+            ArgumentListBuilder helpArgs = new ArgumentListBuilder(SPOON_CLIENT, "help");
+            if (this.command.isPresent()) {
+                helpArgs.add(this.command.get());
+            }
+            HelpCommand command = new HelpCommand(helpArgs);
+            command.setTimeoutMillis(PROBE_TIMEOUT_MILLIS);
+            return command;
+        }
+    }
+
+    private static final class FlagCollectorOutputStream extends LineTransformationOutputStream {
+
+        private final PrintStream out;
+        private final Charset charset;
+        private final Set<String> flags = Sets.newHashSet();
+
+        FlagCollectorOutputStream(PrintStream out, Charset charset) {
+            this.out = out;
+            this.charset = charset;
+        }
+
+        @Override
+        protected void eol(byte[] bytes, int length) throws IOException {
+            String line = this.charset.decode(ByteBuffer.wrap(bytes, 0, length)).toString();
+            this.out.print(line);
+
+            Matcher matcher = FLAG_PATTERN.matcher(line);
+            while (matcher.find()) {
+                this.flags.add(matcher.group(1));
+            }
+        }
+    }
+}
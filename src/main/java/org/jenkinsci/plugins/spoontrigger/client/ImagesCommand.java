@@ -0,0 +1,75 @@
+package org.jenkinsci.plugins.spoontrigger.client;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import hudson.console.LineTransformationOutputStream;
+import hudson.util.ArgumentListBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+public final class ImagesCommand extends BaseCommand {
+
+    private static final Pattern COLUMN_SEPARATOR_PATTERN = Pattern.compile("\\s+");
+
+    private ImagesCommand(ArgumentListBuilder argumentList) {
+        super(argumentList);
+    }
+
+    public static CommandBuilder builder() {
+        return new CommandBuilder();
+    }
+
+    /**
+     * Returns every word of the image listing in lower case, so both image names and identifiers can be looked up.
+     */
+    public Set<String> run(SpoonClient client) throws IllegalStateException {
+        WordCollectorOutputStream outputStream = new WordCollectorOutputStream(client.getCharset());
+        try {
+            client.launch(this, outputStream);
+            return ImmutableSet.copyOf(outputStream.words);
+        } finally {
+            try {
+                final boolean swallowException = true;
+                Closeables.close(outputStream, swallowException);
+            } catch (IOException ex) {
+                // no-op
+            }
+        }
+    }
+
+    public static final class CommandBuilder {
+
+        public ImagesCommand build() {
+            ArgumentListBuilder imagesArgs = new ArgumentListBuilder(SPOON_CLIENT, "images");
+            ImagesCommand command = new ImagesCommand(imagesArgs);
+            command.setTimeoutMillis(PROBE_TIMEOUT_MILLIS);
+            return command;
+        }
+    }
+
+    private static final class WordCollectorOutputStream extends LineTransformationOutputStream {
+
+        private final Charset charset;
+        private final Set<String> words = Sets.newHashSet();
+
+        WordCollectorOutputStream(Charset charset) {
+            this.charset = charset;
+        }
+
+        @Override
+        protected void eol(byte[] bytes, int length) throws IOException {
+            String line = this.charset.decode(ByteBuffer.wrap(bytes, 0, length)).toString();
+            for (String word : COLUMN_SEPARATOR_PATTERN.split(line.trim())) {
+                if (!word.isEmpty()) {
+                    this.words.add(word.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+    }
+}
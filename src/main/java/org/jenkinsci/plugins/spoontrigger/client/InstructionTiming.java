@@ -0,0 +1,14 @@
+package org.jenkinsci.plugins.spoontrigger.client;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+@Data
+public final class InstructionTiming implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String instruction;
+    private final long durationMillis;
+}
@@ -0,0 +1,111 @@
+package org.jenkinsci.plugins.spoontrigger.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passes spoon build output through unchanged and measures the time between the instruction lines spoon echoes.
+ * An instruction line starts with "&gt; " after optional indentation; it lasts until the next instruction or the end of output.
+ */
+final class InstructionTimingOutputStream extends OutputStream {
+
+    static final int MAX_INSTRUCTIONS = 1000;
+
+    private static final int MAX_INSTRUCTION_LENGTH = 256;
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte LINE_FEED = '\n';
+
+    private final OutputStream out;
+    private final Charset charset;
+    private final List<InstructionTiming> timings = Lists.newArrayList();
+    private final byte[] lineBuffer = new byte[MAX_INSTRUCTION_LENGTH];
+
+    private int lineLength;
+    private String currentInstruction;
+    private long currentStartTime;
+    private boolean closed;
+
+    InstructionTimingOutputStream(OutputStream out, Charset charset) {
+        this.out = out;
+        this.charset = charset;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        this.out.write(value);
+        this.append((byte) value);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        this.out.write(bytes, offset, length);
+
+        int end = offset + length;
+        for (int position = offset; position < end; ++position) {
+            this.append(bytes[position]);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+        this.onEndOfLine();
+        this.finishInstruction(System.nanoTime());
+        this.out.close();
+    }
+
+    ImmutableList<InstructionTiming> getTimings() {
+        return ImmutableList.copyOf(this.timings);
+    }
+
+    private void append(byte value) {
+        if (value == LINE_FEED || value == CARRIAGE_RETURN) {
+            this.onEndOfLine();
+        } else if (this.lineLength < this.lineBuffer.length) {
+            this.lineBuffer[this.lineLength++] = value;
+        }
+    }
+
+    private void onEndOfLine() {
+        int start = 0;
+        while (start < this.lineLength && (this.lineBuffer[start] == ' ' || this.lineBuffer[start] == '\t')) {
+            start++;
+        }
+
+        boolean isInstruction = this.lineLength - start > 2 && this.lineBuffer[start] == '>' && this.lineBuffer[start + 1] == ' ';
+        if (isInstruction) {
+            long now = System.nanoTime();
+            this.finishInstruction(now);
+            this.currentInstruction = new String(this.lineBuffer, start + 2, this.lineLength - start - 2, this.charset).trim();
+            this.currentStartTime = now;
+        }
+        this.lineLength = 0;
+    }
+
+    private void finishInstruction(long now) {
+        if (this.currentInstruction == null) {
+            return;
+        }
+
+        if (this.timings.size() < MAX_INSTRUCTIONS) {
+            long durationMillis = TimeUnit.NANOSECONDS.toMillis(now - this.currentStartTime);
+            this.timings.add(new InstructionTiming(this.currentInstruction, durationMillis));
+        }
+        this.currentInstruction = null;
+    }
+}
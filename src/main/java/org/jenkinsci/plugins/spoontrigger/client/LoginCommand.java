@@ -21,6 +21,7 @@ public final class LoginCommand extends VoidCommand {
 
     public static final class CommandBuilder {
 
+        private long timeoutMillis = NO_TIMEOUT;
         private Optional<String> login = Optional.absent();
         private Optional<Secret> password = Optional.absent();
 
@@ -38,6 +39,13 @@ public final class LoginCommand extends VoidCommand {
             return this;
         }
 
+        public CommandBuilder timeout(long timeoutMillis) {
+            checkArgument(timeoutMillis >= 0, "timeout (%s) must not be negative", timeoutMillis);
+
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
         public LoginCommand build() {
             checkState(this.login.isPresent(), REQUIRE_PRESENT_S, "login");
             checkState(this.password.isPresent(), REQUIRE_PRESENT_S, "password");
@@ -45,7 +53,9 @@ public final class LoginCommand extends VoidCommand {
             ArgumentListBuilder loginArgs = new ArgumentListBuilder(SPOON_CLIENT, "login");
             loginArgs.add(this.login.get());
             loginArgs.addMasked(this.password.get());
-            return new LoginCommand(loginArgs);
+            LoginCommand command = new LoginCommand(loginArgs);
+            command.setTimeoutMillis(this.timeoutMillis);
+            return command;
         }
     }
 }
@@ -0,0 +1,169 @@
+package org.jenkinsci.plugins.spoontrigger.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import hudson.util.Secret;
+import lombok.Getter;
+
+import javax.annotation.Nullable;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Serializes Spoon logins per node. Builds with the same credentials share the session of a node, while builds with
+ * other credentials wait, in arrival order, until it is no longer used. Once a build waits, later builds with the
+ * active credentials queue behind it, so a steady stream of them cannot hold the session forever.
+ */
+public final class LoginSessionManager {
+
+    private static final LoginSessionManager INSTANCE = new LoginSessionManager();
+
+    private static final long SESSION_TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(LoginSessionManager.class.getName() + ".sessionTimeToLiveMinutes", 8 * 60));
+    static final int ACQUIRE_TIMEOUT_MINUTES = Integer.getInteger(LoginSessionManager.class.getName() + ".acquireTimeoutMinutes", 60);
+
+    private final Map<String, NodeSession> sessions = Maps.newHashMap();
+
+    private LoginSessionManager() {
+    }
+
+    public static LoginSessionManager getInstance() {
+        return INSTANCE;
+    }
+
+    public static String fingerprint(String login, Secret password) {
+        String credentials = String.format("%s:%s", login, Secret.toString(password));
+        return Hashing.sha256().hashString(credentials, Charsets.UTF_8).toString();
+    }
+
+    public Lease acquire(SpoonClient client, @Nullable String fingerprint) throws IllegalStateException, InterruptedException {
+        String nodeName = client.getNodeName();
+        if (fingerprint == null) {
+            return new Lease(nodeName, null);
+        }
+
+        synchronized (this) {
+            NodeSession session = this.getSession(nodeName);
+            if (!session.waiters.isEmpty() || !session.canAdmit(fingerprint)) {
+                this.awaitTurn(nodeName, session, fingerprint);
+            }
+
+            session.holders++;
+            session.activeFingerprint = fingerprint;
+            return new Lease(nodeName, fingerprint);
+        }
+    }
+
+    private void awaitTurn(String nodeName, NodeSession session, String fingerprint) throws IllegalStateException, InterruptedException {
+        Object ticket = new Object();
+        session.waiters.addLast(ticket);
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(ACQUIRE_TIMEOUT_MINUTES);
+        try {
+            while (session.waiters.getFirst() != ticket || !session.canAdmit(fingerprint)) {
+                long remainingMillis = deadline - System.currentTimeMillis();
+                checkState(remainingMillis > 0, "Timed out after %s minutes waiting for the Spoon session of node (%s),"
+                        + " which is in use by builds logged in with other credentials", ACQUIRE_TIMEOUT_MINUTES, nodeName);
+                this.wait(remainingMillis);
+            }
+        } finally {
+            session.waiters.remove(ticket);
+            // the next waiter may share the credentials that were just admitted
+            this.notifyAll();
+        }
+    }
+
+    public synchronized void invalidate(String nodeName) {
+        NodeSession session = this.sessions.get(nodeName);
+        if (session != null) {
+            session.loggedInFingerprint = null;
+        }
+    }
+
+    private NodeSession getSession(String nodeName) {
+        NodeSession session = this.sessions.get(nodeName);
+        if (session == null) {
+            session = new NodeSession();
+            this.sessions.put(nodeName, session);
+        }
+        return session;
+    }
+
+    private synchronized boolean isLoggedIn(Lease lease) {
+        NodeSession session = this.getSession(lease.getNodeName());
+        boolean isExpired = System.currentTimeMillis() - session.loginTime > SESSION_TIME_TO_LIVE_MILLIS;
+        return !isExpired && Objects.equal(session.loggedInFingerprint, lease.getFingerprint());
+    }
+
+    private synchronized void markLoggedIn(Lease lease) {
+        NodeSession session = this.getSession(lease.getNodeName());
+        session.loggedInFingerprint = lease.getFingerprint();
+        session.loginTime = System.currentTimeMillis();
+    }
+
+    private synchronized void release(Lease lease) {
+        if (lease.getFingerprint() == null) {
+            return;
+        }
+
+        NodeSession session = this.getSession(lease.getNodeName());
+        session.holders--;
+        if (session.holders <= 0) {
+            session.holders = 0;
+            session.activeFingerprint = null;
+        }
+        this.notifyAll();
+    }
+
+    private static final class NodeSession {
+        private final LinkedList<Object> waiters = Lists.newLinkedList();
+        private int holders;
+        @Nullable
+        private String activeFingerprint;
+        @Nullable
+        private String loggedInFingerprint;
+        private long loginTime;
+
+        boolean canAdmit(String fingerprint) {
+            return this.holders == 0 || fingerprint.equals(this.activeFingerprint);
+        }
+    }
+
+    public final class Lease {
+
+        @Getter
+        private final String nodeName;
+        @Getter
+        @Nullable
+        private final String fingerprint;
+
+        private boolean released;
+
+        private Lease(String nodeName, @Nullable String fingerprint) {
+            this.nodeName = nodeName;
+            this.fingerprint = fingerprint;
+        }
+
+        public boolean isLoggedIn() {
+            return this.fingerprint == null || LoginSessionManager.this.isLoggedIn(this);
+        }
+
+        public void markLoggedIn() {
+            LoginSessionManager.this.markLoggedIn(this);
+        }
+
+        public synchronized void release() {
+            if (this.released) {
+                return;
+            }
+
+            this.released = true;
+            LoginSessionManager.this.release(this);
+        }
+    }
+}
@@ -1,73 +1,159 @@
 package org.jenkinsci.plugins.spoontrigger.client;
 
 import com.google.common.base.Optional;
-import com.google.common.base.Strings;
-import hudson.console.LineTransformationOutputStream;
 import lombok.Getter;
 import org.jenkinsci.plugins.spoontrigger.utils.Patterns;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
-final class PatternGroupExtractorOutputStream extends LineTransformationOutputStream {
-
-    private final PatternGroupExtractor groupExtractor;
-    private final PrintStream out;
-    private final Charset charset;
+/**
+ * Passes command output through unchanged while looking for the first group of a pattern.
+ * Lines are decoded and matched only when they contain the anchor text, and not at all once the group is found.
+ * A carriage return also ends a line, so redrawn progress frames are inspected one at a time.
+ */
+final class PatternGroupExtractorOutputStream extends OutputStream {
+
+    private static final Pattern CONTAINS_GROUP_PATTERN = Pattern.compile("[^\\\\]*\\(.*[^\\\\]\\)");
+    private static final int INITIAL_BUFFER_SIZE = 256;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte LINE_FEED = '\n';
+
+    private final OutputStream out;
+    private final Matcher matcher;
+    private final CharsetDecoder decoder;
+    @Nullable
+    private final byte[] anchor;
+
+    private byte[] lineBuffer = new byte[INITIAL_BUFFER_SIZE];
+    private int lineLength;
+    private CharBuffer charBuffer = CharBuffer.allocate(INITIAL_BUFFER_SIZE);
 
     @Getter
     private Optional<String> group;
 
-    public PatternGroupExtractorOutputStream(Pattern pattern, PrintStream out, Charset charset) {
+    public PatternGroupExtractorOutputStream(Pattern pattern, @Nullable String anchor, OutputStream out, Charset charset) {
+        checkArgument(pattern != null && Patterns.matches(pattern.toString(), CONTAINS_GROUP_PATTERN),
+                "pattern (%s) must be a not null regex with a matching group", pattern);
+
         this.out = out;
-        this.charset = charset;
+        this.matcher = pattern.matcher("");
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.anchor = (anchor == null) ? null : anchor.toLowerCase(Locale.ROOT).getBytes(charset);
         this.group = Optional.absent();
-        this.groupExtractor = new PatternGroupExtractor(pattern);
+    }
+
+    private static int toLowerAscii(int value) {
+        return ('A' <= value && value <= 'Z') ? value + ('a' - 'A') : value;
     }
 
     @Override
-    protected void eol(byte[] bytes, int length) throws IOException {
-        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
-        String line = this.charset.decode(buffer).toString();
-        this.out.print(line);
+    public void write(int value) throws IOException {
+        this.out.write(value);
 
-        if (this.group.isPresent()) {
-            return;
+        if (!this.group.isPresent()) {
+            this.append((byte) value);
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        this.out.write(bytes, offset, length);
+
+        int end = offset + length;
+        for (int position = offset; position < end && !this.group.isPresent(); ++position) {
+            this.append(bytes[position]);
         }
+    }
 
-        this.group = this.groupExtractor.getValue(line);
+    @Override
+    public void flush() throws IOException {
+        this.out.flush();
     }
 
-    private static final class PatternGroupExtractor {
+    @Override
+    public void close() throws IOException {
+        if (!this.group.isPresent() && this.lineLength > 0) {
+            this.onEndOfLine();
+        }
+        this.out.close();
+    }
 
-        private static final Pattern CONTAINS_GROUP_PATTERN = Pattern.compile("[^\\\\]*\\(.*[^\\\\]\\)");
+    private void append(byte value) {
+        if (value == LINE_FEED || value == CARRIAGE_RETURN) {
+            this.onEndOfLine();
+            return;
+        }
 
-        private final Pattern pattern;
+        if (this.lineLength == this.lineBuffer.length) {
+            if (this.lineLength == MAX_LINE_LENGTH) {
+                return;
+            }
+            this.lineBuffer = Arrays.copyOf(this.lineBuffer, Math.min(this.lineBuffer.length * 2, MAX_LINE_LENGTH));
+        }
+        this.lineBuffer[this.lineLength++] = value;
+    }
 
-        public PatternGroupExtractor(Pattern pattern) {
-            checkArgument(pattern != null && Patterns.matches(pattern.toString(), CONTAINS_GROUP_PATTERN),
-                    "pattern (%s) must be a not null regex with a matching group", pattern);
+    private void onEndOfLine() {
+        try {
+            if (this.containsAnchor()) {
+                this.group = this.match();
+            }
+        } finally {
+            this.lineLength = 0;
+        }
+    }
 
-            this.pattern = pattern;
+    private boolean containsAnchor() {
+        if (this.anchor == null) {
+            return true;
         }
 
-        public Optional<String> getValue(String text) {
-            if (Strings.isNullOrEmpty(text)) {
-                return Optional.absent();
+        int lastStart = this.lineLength - this.anchor.length;
+        for (int start = 0; start <= lastStart; ++start) {
+            int matched = 0;
+            while (matched < this.anchor.length && toLowerAscii(this.lineBuffer[start + matched]) == this.anchor[matched]) {
+                matched++;
             }
 
-            Matcher matcher = this.pattern.matcher(text);
-            if (matcher.find() && matcher.groupCount() > 0) {
-                return Optional.of(matcher.group(1));
+            if (matched == this.anchor.length) {
+                return true;
             }
+        }
+        return false;
+    }
+
+    private Optional<String> match() {
+        int maxChars = (int) Math.ceil(this.lineLength * (double) this.decoder.maxCharsPerByte());
+        if (this.charBuffer.capacity() < maxChars) {
+            this.charBuffer = CharBuffer.allocate(maxChars);
+        }
+
+        this.charBuffer.clear();
+        this.decoder.reset();
+        this.decoder.decode(ByteBuffer.wrap(this.lineBuffer, 0, this.lineLength), this.charBuffer, true);
+        this.decoder.flush(this.charBuffer);
+        this.charBuffer.flip();
 
-            return Optional.absent();
+        this.matcher.reset(this.charBuffer);
+        if (this.matcher.find() && this.matcher.groupCount() > 0) {
+            return Optional.of(this.matcher.group(1));
         }
+        return Optional.absent();
     }
 }
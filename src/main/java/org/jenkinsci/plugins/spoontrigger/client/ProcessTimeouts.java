@@ -0,0 +1,68 @@
+package org.jenkinsci.plugins.spoontrigger.client;
+
+import hudson.Proc;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Joins a process and kills its whole process tree if it runs past a timeout.
+ * Used both on the master and, for batched commands, on the agent.
+ */
+final class ProcessTimeouts {
+
+    private static final Logger LOGGER = Logger.getLogger(ProcessTimeouts.class.getName());
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "SpoonClient.timeout"));
+
+    private ProcessTimeouts() {
+    }
+
+    static Outcome join(final Proc proc, long timeoutMillis) throws IOException, InterruptedException {
+        if (timeoutMillis <= BaseCommand.NO_TIMEOUT) {
+            return new Outcome(proc.join(), false);
+        }
+
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> killer = EXECUTOR.schedule(new Runnable() {
+            @Override
+            public void run() {
+                timedOut.set(true);
+                try {
+                    proc.kill();
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Failed to kill timed out spoon process", ex);
+                } catch (InterruptedException ex) {
+                    LOGGER.log(Level.WARNING, "Interrupted while killing timed out spoon process", ex);
+                }
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        try {
+            int exitCode = proc.join();
+            return new Outcome(exitCode, timedOut.get());
+        } finally {
+            killer.cancel(false);
+        }
+    }
+
+    static final class Outcome {
+
+        final int exitCode;
+        final boolean timedOut;
+
+        Outcome(int exitCode, boolean timedOut) {
+            this.exitCode = exitCode;
+            this.timedOut = timedOut;
+        }
+    }
+}
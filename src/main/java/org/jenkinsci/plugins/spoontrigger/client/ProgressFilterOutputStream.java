@@ -0,0 +1,125 @@
+package org.jenkinsci.plugins.spoontrigger.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collapses carriage-return redraws of progress bars into occasional snapshots before they reach the console.
+ * A frame terminated by a lone '\r' replaces the previous frame; at most one frame per snapshot interval is written.
+ * Lines longer than the buffer are written out in pieces instead of growing the buffer.
+ */
+final class ProgressFilterOutputStream extends OutputStream {
+
+    static final int MAX_LINE_LENGTH = Integer.getInteger(ProgressFilterOutputStream.class.getName() + ".maxLineLength", 16 * 1024);
+    static final long SNAPSHOT_INTERVAL_MILLIS = Long.getLong(ProgressFilterOutputStream.class.getName() + ".snapshotIntervalMillis",
+            TimeUnit.SECONDS.toMillis(10));
+
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte LINE_FEED = '\n';
+    private static final byte[] LINE_SEPARATOR = {CARRIAGE_RETURN, LINE_FEED};
+    private static final byte[] LINE_FEED_SEPARATOR = {LINE_FEED};
+
+    private final OutputStream out;
+
+    private byte[] line = new byte[MAX_LINE_LENGTH];
+    private int lineLength;
+    private byte[] frame = new byte[MAX_LINE_LENGTH];
+    private int frameLength;
+    private boolean frameWritten = true;
+    private boolean carriageReturnPending;
+    private long lastSnapshotTime;
+
+    ProgressFilterOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        byte current = (byte) value;
+        if (this.carriageReturnPending) {
+            this.carriageReturnPending = false;
+            if (current == LINE_FEED) {
+                this.writeLine(LINE_SEPARATOR);
+                return;
+            }
+            this.endFrame();
+        }
+
+        switch (current) {
+            case CARRIAGE_RETURN:
+                this.carriageReturnPending = true;
+                break;
+            case LINE_FEED:
+                this.writeLine(LINE_FEED_SEPARATOR);
+                break;
+            default:
+                if (this.lineLength == this.line.length) {
+                    this.out.write(this.line, 0, this.lineLength);
+                    this.lineLength = 0;
+                }
+                this.line[this.lineLength++] = current;
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        int end = offset + length;
+        for (int position = offset; position < end; ++position) {
+            this.write(bytes[position]);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.carriageReturnPending) {
+            this.carriageReturnPending = false;
+            this.endFrame();
+        }
+
+        if (this.lineLength > 0) {
+            this.writeLine(LINE_SEPARATOR);
+        } else if (!this.frameWritten) {
+            this.writeFrame();
+        }
+        this.flush();
+    }
+
+    private void writeLine(byte[] separator) throws IOException {
+        this.out.write(this.line, 0, this.lineLength);
+        this.out.write(separator);
+        this.lineLength = 0;
+        this.frameWritten = true;
+    }
+
+    private void endFrame() throws IOException {
+        if (this.lineLength == 0) {
+            return;
+        }
+
+        byte[] previousFrame = this.frame;
+        this.frame = this.line;
+        this.frameLength = this.lineLength;
+        this.line = previousFrame;
+        this.lineLength = 0;
+        this.frameWritten = false;
+
+        long now = System.currentTimeMillis();
+        if (now - this.lastSnapshotTime >= SNAPSHOT_INTERVAL_MILLIS) {
+            this.lastSnapshotTime = now;
+            this.writeFrame();
+        }
+    }
+
+    private void writeFrame() throws IOException {
+        this.out.write(this.frame, 0, this.frameLength);
+        this.out.write(LINE_SEPARATOR);
+        this.frameWritten = true;
+        this.out.flush();
+    }
+}
@@ -21,6 +21,7 @@ public final class PushCommand extends VoidCommand {
 
     public static final class CommandBuilder {
 
+        private long timeoutMillis = NO_TIMEOUT;
         private Optional<String> imageName = Optional.absent();
         private Optional<String> remoteImageName = Optional.absent();
 
@@ -38,6 +39,13 @@ public final class PushCommand extends VoidCommand {
             return this;
         }
 
+        public CommandBuilder timeout(long timeoutMillis) {
+            checkArgument(timeoutMillis >= 0, "timeout (%s) must not be negative", timeoutMillis);
+
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
         public PushCommand build() {
             checkState(this.imageName.isPresent(), REQUIRE_PRESENT_S, "image");
 
@@ -46,7 +54,9 @@ public final class PushCommand extends VoidCommand {
                 args.add(this.remoteImageName.get());
             }
 
-            return new PushCommand(args);
+            PushCommand command = new PushCommand(args);
+            command.setTimeoutMillis(this.timeoutMillis);
+            return command;
         }
     }
 }
@@ -21,6 +21,7 @@ public final class RemoveImageCommand extends VoidCommand {
 
     public static final class CommandBuilder {
 
+        private long timeoutMillis = NO_TIMEOUT;
         private Optional<String> image = Optional.absent();
 
         public CommandBuilder image(String image) {
@@ -30,11 +31,20 @@ public final class RemoveImageCommand extends VoidCommand {
             return this;
         }
 
+        public CommandBuilder timeout(long timeoutMillis) {
+            checkArgument(timeoutMillis >= 0, "timeout (%s) must not be negative", timeoutMillis);
+
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
         public RemoveImageCommand build() {
             checkState(this.image.isPresent(), REQUIRE_PRESENT_S, "image");
 
             ArgumentListBuilder buildArgs = new ArgumentListBuilder(SPOON_CLIENT, "rmi", this.image.get());
-            return new RemoveImageCommand(buildArgs);
+            RemoveImageCommand command = new RemoveImageCommand(buildArgs);
+            command.setTimeoutMillis(this.timeoutMillis);
+            return command;
         }
     }
 }
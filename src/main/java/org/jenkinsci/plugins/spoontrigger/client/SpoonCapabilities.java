@@ -0,0 +1,28 @@
+package org.jenkinsci.plugins.spoontrigger.client;
+
+import com.google.common.collect.ImmutableSet;
+import lombok.Data;
+
+import java.util.Set;
+
+@Data
+public final class SpoonCapabilities {
+
+    private final String version;
+    private final ImmutableSet<String> flags;
+    private final long probeTime;
+
+    public SpoonCapabilities(String version, Set<String> flags, long probeTime) {
+        this.version = version;
+        this.flags = ImmutableSet.copyOf(flags);
+        this.probeTime = probeTime;
+    }
+
+    public boolean supports(String flag) {
+        return this.flags.isEmpty() || this.flags.contains(flag);
+    }
+
+    boolean isFresh(long now, long timeToLiveMillis) {
+        return now - this.probeTime < timeToLiveMillis;
+    }
+}
@@ -1,18 +1,28 @@
 package org.jenkinsci.plugins.spoontrigger.client;
 
+import com.google.common.base.Optional;
+import com.google.common.io.Closeables;
+import com.google.common.io.CountingOutputStream;
 import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.Proc;
 import hudson.model.TaskListener;
+import hudson.remoting.Channel;
+import hudson.remoting.VirtualChannel;
 import hudson.util.ArgumentListBuilder;
 import lombok.AccessLevel;
 import lombok.Getter;
+import org.jenkinsci.plugins.spoontrigger.CommandHistory;
 import org.jenkinsci.plugins.spoontrigger.SpoonBuild;
 
+import javax.annotation.Nullable;
+
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.charset.Charset;
+import java.util.List;
 
 import static com.google.common.base.Preconditions.checkState;
 import static org.jenkinsci.plugins.spoontrigger.Messages.REQUIRE_PRESENT_S;
@@ -26,49 +36,180 @@ public final class SpoonClient {
     private TaskListener listener;
     private Launcher launcher;
 
+    @Getter
+    private String nodeName;
+
     @Getter(AccessLevel.PACKAGE)
     private Charset charset;
 
+    private boolean compressOutput;
+
+    @Nullable
+    private SpoonBuild build;
+
     public static ClientBuilder builder() {
         return new ClientBuilder();
     }
 
     public static ClientBuilder builder(SpoonBuild build) {
-        return new ClientBuilder()
+        ClientBuilder builder = new ClientBuilder()
                 .charset(build.getCharset())
                 .env(build.getEnv().get())
-                .pwd(build.getScript().get().getParent());
+                .pwd(build.getScript().get().getParent())
+                .nodeName(build.getBuiltOnStr());
+        builder.client.build = build;
+        return builder;
     }
 
-    void launch(ArgumentListBuilder argumentList) throws IllegalStateException {
-        this.launch(argumentList, this.getLogger());
+    void launch(BaseCommand command) throws IllegalStateException {
+        OutputStream out = this.createConsoleStream();
+        try {
+            this.launch(command, out);
+        } finally {
+            try {
+                final boolean swallowException = true;
+                Closeables.close(out, swallowException);
+            } catch (IOException ex) {
+                // no-op
+            }
+        }
     }
 
-    void launch(ArgumentListBuilder argumentList, OutputStream out) throws IllegalStateException {
-        int errorCode;
+    void launch(BaseCommand command, OutputStream out) throws IllegalStateException {
+        ArgumentListBuilder argumentList = command.getArgumentList();
+        long timeoutMillis = this.resolveTimeoutMillis(command.getName(), command.getTimeoutMillis());
+        long startTime = System.currentTimeMillis();
+
+        ProcessTimeouts.Outcome outcome;
         try {
-            errorCode = this.createLauncher().cmds(argumentList).stdout(out).join();
+            Proc proc = this.createLauncher().cmds(argumentList).stdout(out).start();
+            outcome = ProcessTimeouts.join(proc, timeoutMillis);
         } catch (IOException ex) {
             throw onLaunchFailure(argumentList, ex);
         } catch (InterruptedException ex) {
-            throw onLaunchFailure(argumentList, ex);
+            throw onLaunchInterrupted(String.format("command (%s)", argumentList), ex);
+        }
+
+        if (outcome.timedOut) {
+            this.invalidateNodeState();
+            throw new CommandTimeoutException(argumentList.toString(), timeoutMillis);
         }
 
-        if (errorCode != NO_ERROR) {
-            String errMsg = String.format("Process returned error code %d", errorCode);
+        if (outcome.exitCode != NO_ERROR) {
+            this.invalidateNodeState();
+            String errMsg = String.format("Process returned error code %d", outcome.exitCode);
             throw new IllegalStateException(errMsg);
         }
+
+        this.recordDuration(command.getName(), System.currentTimeMillis() - startTime);
+    }
+
+    CommandBatch.BatchResult launchBatch(List<CommandBatch.Step> steps) throws IllegalStateException {
+        OutputStream consoleOut = this.compressOutput ? new CompressedChunkDecoderOutputStream(this.getLogger()) : this.getLogger();
+        CountingOutputStream channelOut = new CountingOutputStream(consoleOut);
+
+        CommandBatch.BatchResult result;
+        try {
+            VirtualChannel channel = this.launcher.getChannel();
+            checkState(channel != null, "Node (%s) is offline", this.nodeName);
+
+            long[] timeoutsMillis = new long[steps.size()];
+            for (int stepIndex = 0; stepIndex < steps.size(); ++stepIndex) {
+                CommandBatch.Step step = steps.get(stepIndex);
+                timeoutsMillis[stepIndex] = this.resolveTimeoutMillis(step.getName(), step.getTimeoutMillis());
+            }
+
+            BatchCallable callable = new BatchCallable(steps, timeoutsMillis, this.env, this.pwd.getRemote(), this.charset,
+                    channelOut, this.compressOutput);
+            result = channel.call(callable);
+            // output chunks are written by the channel asynchronously and may still be in flight when the call returns
+            if (channel instanceof Channel) {
+                ((Channel) channel).syncLocalIO();
+            }
+        } catch (IOException ex) {
+            throw onLaunchFailure(steps, ex);
+        } catch (InterruptedException ex) {
+            throw onLaunchInterrupted(String.format("%d batched commands", steps.size()), ex);
+        } finally {
+            if (this.compressOutput) {
+                try {
+                    final boolean swallowException = true;
+                    Closeables.close(consoleOut, swallowException);
+                } catch (IOException ex) {
+                    // no-op
+                }
+            }
+        }
+
+        result.setTransferredOutputBytes(channelOut.getCount());
+
+        for (int stepIndex = 0; stepIndex < result.getExecutedCount(); ++stepIndex) {
+            if (result.getExitCode(stepIndex) == NO_ERROR) {
+                this.recordDuration(steps.get(stepIndex).getName(), result.getDurationMillis(stepIndex));
+            }
+        }
+
+        Optional<Integer> failedStep = result.getFailedStep();
+        if (failedStep.isPresent()) {
+            this.invalidateNodeState();
+            ArgumentListBuilder args = steps.get(failedStep.get()).getArgumentList();
+            if (result.isTimedOut(failedStep.get())) {
+                throw new CommandTimeoutException(args.toString(), result.getTimeoutMillis(failedStep.get()));
+            }
+
+            String errMsg = String.format("Command (%s) returned error code %d", args, result.getExitCode(failedStep.get()));
+            throw new IllegalStateException(errMsg);
+        }
+        return result;
+    }
+
+    private long resolveTimeoutMillis(String commandName, long timeoutMillis) {
+        if (timeoutMillis != BaseCommand.NO_TIMEOUT || this.build == null) {
+            return timeoutMillis;
+        }
+        return CommandHistory.getTimeoutMillis(this.build, commandName);
+    }
+
+    private void recordDuration(String commandName, long durationMillis) {
+        if (this.build != null) {
+            CommandHistory.record(this.build, commandName, durationMillis);
+        }
     }
 
     PrintStream getLogger() {
         return this.listener.getLogger();
     }
 
+    OutputStream createConsoleStream() {
+        return new ProgressFilterOutputStream(this.getLogger());
+    }
+
+    private void invalidateNodeState() {
+        CapabilityCache.invalidate(this.nodeName);
+        LoginSessionManager.getInstance().invalidate(this.nodeName);
+    }
+
     private IllegalStateException onLaunchFailure(ArgumentListBuilder args, Exception ex) {
+        this.invalidateNodeState();
         String errMsg = String.format("Execution of command (%s) failed", args);
         return new IllegalStateException(errMsg, ex);
     }
 
+    private IllegalStateException onLaunchFailure(List<CommandBatch.Step> steps, Exception ex) {
+        this.invalidateNodeState();
+        String errMsg = String.format("Execution of %d batched commands failed", steps.size());
+        return new IllegalStateException(errMsg, ex);
+    }
+
+    /**
+     * An interrupted command says nothing about the state of the node, so unlike a failure it keeps the login session and capabilities.
+     */
+    private static IllegalStateException onLaunchInterrupted(String commandDescription, InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        String errMsg = String.format("Execution of %s was interrupted", commandDescription);
+        return new IllegalStateException(errMsg, ex);
+    }
+
     private Launcher.ProcStarter createLauncher() {
         return this.launcher.launch().pwd(this.pwd).envs(this.env);
     }
@@ -101,6 +242,16 @@ public final class SpoonClient {
             return this;
         }
 
+        public ClientBuilder nodeName(String nodeName) {
+            this.client.nodeName = nodeName;
+            return this;
+        }
+
+        public ClientBuilder compressOutput(boolean compressOutput) {
+            this.client.compressOutput = compressOutput;
+            return this;
+        }
+
         public ClientBuilder charset(Charset charset) {
             this.client.charset = charset;
             return this;
@@ -112,6 +263,10 @@ public final class SpoonClient {
             checkState(this.client.launcher != null, REQUIRE_PRESENT_S, "launcher");
             checkState(this.client.listener != null, REQUIRE_PRESENT_S, "listener");
 
+            if (this.client.nodeName == null) {
+                this.client.nodeName = "";
+            }
+
             if (this.client.charset == null) {
                 this.client.charset = Charset.defaultCharset();
             }
@@ -4,24 +4,37 @@ import com.google.common.base.Optional;
 import com.google.common.io.Closeables;
 import hudson.util.ArgumentListBuilder;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.regex.Pattern;
 
 class StringPatternCommand extends BaseCommand {
 
     private final Pattern groupValuePattern;
+    @Nullable
+    private final String groupValueAnchor;
 
-    StringPatternCommand(ArgumentListBuilder argumentList, Pattern groupValuePattern) {
+    StringPatternCommand(ArgumentListBuilder argumentList, Pattern groupValuePattern, @Nullable String groupValueAnchor) {
         super(argumentList);
 
         this.groupValuePattern = groupValuePattern;
+        this.groupValueAnchor = groupValueAnchor;
+    }
+
+    Pattern getGroupValuePattern() {
+        return this.groupValuePattern;
+    }
+
+    @Nullable
+    String getGroupValueAnchor() {
+        return this.groupValueAnchor;
     }
 
     public String run(SpoonClient client) throws IllegalStateException {
         PatternGroupExtractorOutputStream outputStream = new PatternGroupExtractorOutputStream(this.groupValuePattern,
-                client.getLogger(), client.getCharset());
+                this.groupValueAnchor, client.createConsoleStream(), client.getCharset());
         try {
-            client.launch(this.getArgumentList(), outputStream);
+            client.launch(this, outputStream);
             Optional<String> group = outputStream.getGroup();
 
             if (group.isPresent()) {
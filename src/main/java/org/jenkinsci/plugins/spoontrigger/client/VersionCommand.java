@@ -7,9 +7,10 @@ import java.util.regex.Pattern;
 public class VersionCommand extends StringPatternCommand {
 
     private static final Pattern VERSION_PATTERN = Pattern.compile("\\s*Version:\\s+(\\S+)", Pattern.CASE_INSENSITIVE);
+    private static final String VERSION_ANCHOR = "version:";
 
     private VersionCommand(ArgumentListBuilder argumentList) {
-        super(argumentList, VERSION_PATTERN);
+        super(argumentList, VERSION_PATTERN, VERSION_ANCHOR);
     }
 
     public static CommandBuilder builder() {
@@ -20,7 +21,9 @@ public class VersionCommand extends StringPatternCommand {
 
         public VersionCommand build() {
             ArgumentListBuilder versionArgs = new ArgumentListBuilder(SPOON_CLIENT, "version");
-            return new VersionCommand(versionArgs);
+            VersionCommand command = new VersionCommand(versionArgs);
+            command.setTimeoutMillis(PROBE_TIMEOUT_MILLIS);
+            return command;
         }
     }
 }
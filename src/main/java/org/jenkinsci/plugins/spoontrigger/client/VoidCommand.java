@@ -9,6 +9,6 @@ abstract class VoidCommand extends BaseCommand {
     }
 
     public void run(SpoonClient client) throws IllegalStateException {
-        client.launch(this.getArgumentList());
+        client.launch(this);
     }
 }
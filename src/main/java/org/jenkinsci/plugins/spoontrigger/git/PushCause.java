@@ -1,9 +1,13 @@
 package org.jenkinsci.plugins.spoontrigger.git;
 
+import com.google.common.base.Optional;
 import hudson.Util;
 import hudson.model.Cause;
 import lombok.Getter;
 
+import javax.annotation.Nullable;
+import java.util.Set;
+
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.jenkinsci.plugins.spoontrigger.Messages.REQUIRE_NOT_NULL_OR_EMPTY_S;
 
@@ -16,12 +20,24 @@ public class PushCause extends Cause {
     @Getter
     private final String pusher;
 
+    @Nullable
+    private final transient Set<String> changedPaths;
+
     public PushCause(String repositoryUrl, String pusher, String branch, String head) {
+        this(repositoryUrl, pusher, branch, head, Optional.<Set<String>>absent());
+    }
+
+    public PushCause(String repositoryUrl, String pusher, String branch, String head, Optional<Set<String>> changedPaths) {
         checkArgument(Util.fixEmptyAndTrim(pusher) != null, REQUIRE_NOT_NULL_OR_EMPTY_S, "pusher");
 
         this.repository = new Repository(repositoryUrl);
         this.branch = new Branch(branch, head);
         this.pusher = pusher;
+        this.changedPaths = changedPaths.orNull();
+    }
+
+    public Optional<Set<String>> getChangedPaths() {
+        return Optional.fromNullable(this.changedPaths);
     }
 
     @Override
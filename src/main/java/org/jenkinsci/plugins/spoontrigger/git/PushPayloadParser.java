@@ -0,0 +1,357 @@
+package org.jenkinsci.plugins.spoontrigger.git;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+public final class PushPayloadParser {
+
+    public static final int DEFAULT_MAX_PAYLOAD_LENGTH = Integer.getInteger(PushPayloadParser.class.getName() + ".maxPayloadLength", 5 * 1024 * 1024);
+    public static final int MAX_LISTED_COMMITS = 20;
+    public static final int MAX_CHANGED_PATHS = 4096;
+
+    private static final int END_OF_STREAM = -1;
+    private static final int NOTHING_PEEKED = -2;
+
+    private static final String REPOSITORY_URL_PATH = "repository.url";
+    private static final String PUSHER_NAME_PATH = "pusher.name";
+    private static final String HEAD_PATH = "after";
+    private static final String BRANCH_PATH = "ref";
+
+    private static final Set<String> REQUIRED_PATHS = ImmutableSet.of(REPOSITORY_URL_PATH, PUSHER_NAME_PATH, HEAD_PATH, BRANCH_PATH);
+    private static final Set<String> OBJECT_PATHS = ImmutableSet.of("repository", "pusher");
+    private static final String COMMITS_PATH = "commits";
+    private static final Set<String> CHANGED_PATHS_KEYS = ImmutableSet.of("added", "removed", "modified");
+
+    private final Reader reader;
+    private final int maxPayloadLength;
+    private final StringBuilder buffer = new StringBuilder();
+    private final Map<String, String> values = Maps.newHashMapWithExpectedSize(REQUIRED_PATHS.size());
+    private final Set<String> changedPaths = Sets.newHashSet();
+
+    private int position;
+    private int peeked = NOTHING_PEEKED;
+    private boolean commitsParsed;
+    private boolean changedPathsTruncated;
+
+    private PushPayloadParser(Reader reader, int maxPayloadLength) {
+        this.reader = reader;
+        this.maxPayloadLength = maxPayloadLength;
+    }
+
+    public static PushCause parse(Reader reader) throws IllegalStateException {
+        return parse(reader, DEFAULT_MAX_PAYLOAD_LENGTH);
+    }
+
+    public static PushCause parse(Reader reader, int maxPayloadLength) throws IllegalStateException {
+        checkArgument(reader != null, "reader must be not null");
+        checkArgument(maxPayloadLength > 0, "maxPayloadLength must be positive");
+
+        PushPayloadParser parser = new PushPayloadParser(reader, maxPayloadLength);
+        try {
+            parser.parseDocument();
+        } catch (PayloadTooLargeException ex) {
+            if (!parser.hasRequiredValues()) {
+                throw ex;
+            }
+            parser.changedPathsTruncated = true;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed reading web hook payload", ex);
+        }
+
+        return parser.createCause();
+    }
+
+    private PushCause createCause() {
+        for (String path : REQUIRED_PATHS) {
+            checkState(this.values.get(path) != null, "Failed parsing web hook payload. Field (%s) is missing", path);
+        }
+
+        Optional<Set<String>> changes = Optional.absent();
+        if (this.commitsParsed && !this.changedPathsTruncated) {
+            changes = Optional.<Set<String>>of(ImmutableSet.copyOf(this.changedPaths));
+        }
+
+        return new PushCause(this.values.get(REPOSITORY_URL_PATH), this.values.get(PUSHER_NAME_PATH),
+                this.values.get(BRANCH_PATH), this.values.get(HEAD_PATH), changes);
+    }
+
+    private boolean hasRequiredValues() {
+        return this.values.size() == REQUIRED_PATHS.size();
+    }
+
+    private boolean isComplete() {
+        return this.hasRequiredValues() && this.commitsParsed;
+    }
+
+    private void parseDocument() throws IOException {
+        int token = this.nextToken();
+        checkState(token == '{', "Failed parsing web hook payload. Expected an object at position %s", this.position);
+
+        this.parseObject(null);
+    }
+
+    private boolean parseObject(String parentPath) throws IOException {
+        int token = this.nextToken();
+        if (token == '}') {
+            return false;
+        }
+
+        while (true) {
+            this.expect(token, '"');
+            String key = this.readString();
+            this.expect(this.nextToken(), ':');
+
+            String path = (parentPath == null) ? key : parentPath + '.' + key;
+            int valueToken = this.nextToken();
+            if (REQUIRED_PATHS.contains(path) && valueToken == '"') {
+                this.values.put(path, this.readString());
+                if (this.isComplete()) {
+                    return true;
+                }
+            } else if (OBJECT_PATHS.contains(path) && valueToken == '{') {
+                if (this.parseObject(path)) {
+                    return true;
+                }
+            } else if (COMMITS_PATH.equals(path) && valueToken == '[') {
+                this.parseCommits();
+                if (this.isComplete()) {
+                    return true;
+                }
+            } else {
+                this.skipValue(valueToken);
+            }
+
+            token = this.nextToken();
+            if (token == '}') {
+                return false;
+            }
+            this.expect(token, ',');
+            token = this.nextToken();
+        }
+    }
+
+    private void parseCommits() throws IOException {
+        int commitCount = 0;
+        int token = this.nextToken();
+        while (token != ']') {
+            if (token == '{') {
+                commitCount++;
+                this.parseCommit();
+            } else {
+                this.skipValue(token);
+            }
+
+            token = this.nextToken();
+            if (token == ',') {
+                token = this.nextToken();
+            } else {
+                this.expect(token, ']');
+            }
+        }
+
+        this.commitsParsed = true;
+        if (commitCount == 0 || commitCount >= MAX_LISTED_COMMITS) {
+            this.changedPathsTruncated = true;
+        }
+    }
+
+    private void parseCommit() throws IOException {
+        int token = this.nextToken();
+        while (token != '}') {
+            this.expect(token, '"');
+            String key = this.readString();
+            this.expect(this.nextToken(), ':');
+
+            int valueToken = this.nextToken();
+            if (CHANGED_PATHS_KEYS.contains(key) && valueToken == '[') {
+                this.parseChangedPaths();
+            } else {
+                this.skipValue(valueToken);
+            }
+
+            token = this.nextToken();
+            if (token == ',') {
+                token = this.nextToken();
+            } else {
+                this.expect(token, '}');
+            }
+        }
+    }
+
+    private void parseChangedPaths() throws IOException {
+        int token = this.nextToken();
+        while (token != ']') {
+            if (token == '"' && this.changedPaths.size() < MAX_CHANGED_PATHS) {
+                this.changedPaths.add(this.readString());
+            } else {
+                this.changedPathsTruncated = true;
+                this.skipValue(token);
+            }
+
+            token = this.nextToken();
+            if (token == ',') {
+                token = this.nextToken();
+            } else {
+                this.expect(token, ']');
+            }
+        }
+    }
+
+    private void skipValue(int token) throws IOException {
+        switch (token) {
+            case '"':
+                this.skipString();
+                return;
+            case '{':
+            case '[':
+                this.skipContainer();
+                return;
+            default:
+                this.skipLiteral(token);
+        }
+    }
+
+    private void skipContainer() throws IOException {
+        int depth = 1;
+        while (depth > 0) {
+            int character = this.read();
+            switch (character) {
+                case END_OF_STREAM:
+                    throw this.onUnexpectedEnd();
+                case '"':
+                    this.skipString();
+                    break;
+                case '{':
+                case '[':
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void skipLiteral(int token) throws IOException {
+        checkState(token != END_OF_STREAM, "Failed parsing web hook payload. Unexpected end of payload");
+
+        while (true) {
+            int character = this.read();
+            if (character == ',' || character == '}' || character == ']' || character == END_OF_STREAM || Character.isWhitespace(character)) {
+                this.peeked = character;
+                return;
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int character = this.read();
+            if (character == '"') {
+                return;
+            }
+
+            if (character == '\\') {
+                this.read();
+            } else if (character == END_OF_STREAM) {
+                throw this.onUnexpectedEnd();
+            }
+        }
+    }
+
+    private String readString() throws IOException {
+        this.buffer.setLength(0);
+        while (true) {
+            int character = this.read();
+            switch (character) {
+                case '"':
+                    return this.buffer.toString();
+                case '\\':
+                    this.buffer.append(this.readEscaped());
+                    break;
+                case END_OF_STREAM:
+                    throw this.onUnexpectedEnd();
+                default:
+                    this.buffer.append((char) character);
+            }
+        }
+    }
+
+    private char readEscaped() throws IOException {
+        int character = this.read();
+        switch (character) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int codePoint = 0;
+                for (int digit = 0; digit < 4; ++digit) {
+                    int value = Character.digit(this.read(), 16);
+                    checkState(value >= 0, "Failed parsing web hook payload. Invalid unicode escape sequence at position %s", this.position);
+                    codePoint = (codePoint << 4) | value;
+                }
+                return (char) codePoint;
+            case END_OF_STREAM:
+                throw this.onUnexpectedEnd();
+            default:
+                return (char) character;
+        }
+    }
+
+    private void expect(int token, char expected) {
+        checkState(token == expected, "Failed parsing web hook payload. Expected (%s) at position %s", expected, this.position);
+    }
+
+    private int nextToken() throws IOException {
+        int character = this.read();
+        while (character != END_OF_STREAM && Character.isWhitespace(character)) {
+            character = this.read();
+        }
+        return character;
+    }
+
+    private int read() throws IOException {
+        if (this.peeked != NOTHING_PEEKED) {
+            int character = this.peeked;
+            this.peeked = NOTHING_PEEKED;
+            return character;
+        }
+
+        int character = this.reader.read();
+        if (character != END_OF_STREAM && ++this.position > this.maxPayloadLength) {
+            throw new PayloadTooLargeException(this.maxPayloadLength);
+        }
+        return character;
+    }
+
+    private IllegalStateException onUnexpectedEnd() {
+        return new IllegalStateException("Failed parsing web hook payload. Unexpected end of payload");
+    }
+
+    public static final class PayloadTooLargeException extends IllegalStateException {
+
+        public PayloadTooLargeException(int maxPayloadLength) {
+            super(String.format("Web hook payload exceeds the maximum length of %d characters", maxPayloadLength));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.jenkinsci.plugins.spoontrigger.storage;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Weak rolling checksums and strong digests of the fixed-size blocks of a file, used as the basis of a delta transfer.
+ * A trailing block shorter than the block size is not included.
+ */
+public final class BlockSignatures implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_BLOCK_SIZE = Integer.getInteger(BlockSignatures.class.getName() + ".blockSize", 64 * 1024);
+
+    static final int STRONG_LENGTH = 16;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String STRONG_ALGORITHM = "MD5";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int blockSize;
+    private final int[] weak;
+    private final byte[] strong;
+
+    private BlockSignatures(int blockSize, int[] weak, byte[] strong) {
+        this.blockSize = blockSize;
+        this.weak = weak;
+        this.strong = strong;
+    }
+
+    public static BlockSignatures empty(int blockSize) {
+        return new BlockSignatures(blockSize, new int[0], new byte[0]);
+    }
+
+    public static BlockSignatures compute(File file, int blockSize) throws IOException {
+        Builder builder = new Builder(blockSize);
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                builder.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return builder.build();
+    }
+
+    public static BlockSignatures read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        try {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException(String.format("Block signatures (%s) have an unsupported format", file));
+            }
+
+            int blockSize = in.readInt();
+            int blockCount = in.readInt();
+            int[] weak = new int[blockCount];
+            byte[] strong = new byte[blockCount * STRONG_LENGTH];
+            for (int block = 0; block < blockCount; ++block) {
+                weak[block] = in.readInt();
+                in.readFully(strong, block * STRONG_LENGTH, STRONG_LENGTH);
+            }
+            return new BlockSignatures(blockSize, weak, strong);
+        } finally {
+            in.close();
+        }
+    }
+
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        try {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(this.blockSize);
+            out.writeInt(this.weak.length);
+            for (int block = 0; block < this.weak.length; ++block) {
+                out.writeInt(this.weak[block]);
+                out.write(this.strong, block * STRONG_LENGTH, STRONG_LENGTH);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public int getBlockSize() {
+        return this.blockSize;
+    }
+
+    public int getBlockCount() {
+        return this.weak.length;
+    }
+
+    public long getSerializedSize() {
+        return 3 * 4 + (long) this.weak.length * (4 + STRONG_LENGTH);
+    }
+
+    int getWeak(int block) {
+        return this.weak[block];
+    }
+
+    boolean isStrongEqual(int block, byte[] digest) {
+        int offset = block * STRONG_LENGTH;
+        for (int i = 0; i < STRONG_LENGTH; ++i) {
+            if (this.strong[offset + i] != digest[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the rsync weak checksum of a block, which can be rolled forward one byte at a time.
+     */
+    static int weakChecksum(byte[] data, int offset, int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; ++i) {
+            int value = data[offset + i] & 0xff;
+            a += value;
+            b += (length - i) * value;
+        }
+        return toWeak(a, b);
+    }
+
+    static int toWeak(int a, int b) {
+        return ((b & 0xffff) << 16) | (a & 0xffff);
+    }
+
+    static MessageDigest createStrongDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(STRONG_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(STRONG_ALGORITHM + " is not supported", ex);
+        }
+    }
+
+    /**
+     * Computes block signatures of the bytes written to it, so signatures of a file can be built while it is written.
+     */
+    static final class Builder extends OutputStream {
+
+        private final int blockSize;
+        private final byte[] block;
+        private final MessageDigest strongDigest;
+
+        private int[] weak = new int[16];
+        private byte[] strong = new byte[16 * STRONG_LENGTH];
+        private int blockCount;
+        private int length;
+
+        Builder(int blockSize) throws IOException {
+            this.blockSize = blockSize;
+            this.block = new byte[blockSize];
+            this.strongDigest = createStrongDigest();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int count = Math.min(len, this.blockSize - this.length);
+                System.arraycopy(b, off, this.block, this.length, count);
+                this.length += count;
+                off += count;
+                len -= count;
+
+                if (this.length == this.blockSize) {
+                    this.addBlock();
+                    this.length = 0;
+                }
+            }
+        }
+
+        private void addBlock() {
+            if (this.blockCount == this.weak.length) {
+                this.weak = Arrays.copyOf(this.weak, 2 * this.weak.length);
+                this.strong = Arrays.copyOf(this.strong, 2 * this.strong.length);
+            }
+
+            this.weak[this.blockCount] = weakChecksum(this.block, 0, this.blockSize);
+            this.strongDigest.update(this.block, 0, this.blockSize);
+            System.arraycopy(this.strongDigest.digest(), 0, this.strong, this.blockCount * STRONG_LENGTH, STRONG_LENGTH);
+            this.blockCount++;
+        }
+
+        BlockSignatures build() {
+            return new BlockSignatures(this.blockSize, Arrays.copyOf(this.weak, this.blockCount),
+                    Arrays.copyOf(this.strong, this.blockCount * STRONG_LENGTH));
+        }
+    }
+}
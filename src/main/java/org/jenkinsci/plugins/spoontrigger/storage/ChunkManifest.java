@@ -0,0 +1,96 @@
+package org.jenkinsci.plugins.spoontrigger.storage;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import lombok.Data;
+import lombok.Getter;
+
+import java.io.*;
+import java.util.List;
+
+/**
+ * Lists the chunks of a file stored in {@link ChunkStore}, in the order in which they rebuild the file.
+ */
+public final class ChunkManifest {
+
+    private static final String HEADER = "spoon-chunk-manifest 1";
+    private static final String BUILD_KEY = "build ";
+    private static final String FILE_KEY = "file ";
+    private static final String SIZE_KEY = "size ";
+
+    @Getter
+    private final String buildId;
+    @Getter
+    private final String fileName;
+    @Getter
+    private final long size;
+    @Getter
+    private final ImmutableList<Chunk> chunks;
+
+    ChunkManifest(String buildId, String fileName, long size, List<Chunk> chunks) {
+        this.buildId = buildId;
+        this.fileName = fileName;
+        this.size = size;
+        this.chunks = ImmutableList.copyOf(chunks);
+    }
+
+    ChunkManifest withBuildId(String buildId) {
+        return new ChunkManifest(buildId, this.fileName, this.size, this.chunks);
+    }
+
+    static ChunkManifest read(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charsets.UTF_8));
+        try {
+            checkFormat(HEADER.equals(reader.readLine()), file);
+            String buildId = readValue(reader, BUILD_KEY, file);
+            String fileName = readValue(reader, FILE_KEY, file);
+            long size = Long.parseLong(readValue(reader, SIZE_KEY, file));
+
+            ImmutableList.Builder<Chunk> chunks = ImmutableList.builder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(' ');
+                checkFormat(separator > 0, file);
+                chunks.add(new Chunk(line.substring(0, separator), Integer.parseInt(line.substring(separator + 1))));
+            }
+            return new ChunkManifest(buildId, fileName, size, chunks.build());
+        } catch (NumberFormatException ex) {
+            throw new IOException(String.format("Chunk manifest (%s) is corrupted", file), ex);
+        } finally {
+            reader.close();
+        }
+    }
+
+    void write(File file) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8));
+        try {
+            writer.write(HEADER + '\n');
+            writer.write(BUILD_KEY + this.buildId + '\n');
+            writer.write(FILE_KEY + this.fileName + '\n');
+            writer.write(SIZE_KEY + this.size + '\n');
+            for (Chunk chunk : this.chunks) {
+                writer.write(chunk.getHash() + ' ' + chunk.getLength() + '\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String readValue(BufferedReader reader, String key, File file) throws IOException {
+        String line = reader.readLine();
+        checkFormat(line != null && line.startsWith(key), file);
+        return line.substring(key.length());
+    }
+
+    private static void checkFormat(boolean condition, File file) throws IOException {
+        if (!condition) {
+            throw new IOException(String.format("Chunk manifest (%s) is corrupted", file));
+        }
+    }
+
+    @Data
+    public static final class Chunk {
+        private final String hash;
+        private final int length;
+    }
+}
@@ -0,0 +1,508 @@
+package org.jenkinsci.plugins.spoontrigger.storage;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import hudson.Extension;
+import hudson.Util;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Item;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import lombok.Data;
+
+import java.io.*;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.jenkinsci.plugins.spoontrigger.Messages.REQUIRE_NOT_NULL_S;
+
+/**
+ * Stores files as content-defined chunks addressed by their SHA-256 digest, so chunks shared by files
+ * of different builds are stored once. A manifest per file lists its chunks.
+ * <p/>
+ * Chunks are reference-counted by the manifests that contain them and deleted when the builds owning
+ * those manifests are deleted. Reference counts are rebuilt from the manifests when the store is loaded.
+ */
+public final class ChunkStore {
+
+    private static final Logger LOGGER = Logger.getLogger(ChunkStore.class.getName());
+
+    static final int INGEST_THREADS = Integer.getInteger(ChunkStore.class.getName() + ".ingestThreads", Runtime.getRuntime().availableProcessors());
+    static final int MAX_PENDING_CHUNKS = Integer.getInteger(ChunkStore.class.getName() + ".maxPendingChunks", 2 * INGEST_THREADS);
+
+    private static final String ROOT_DIR_PROPERTY = ChunkStore.class.getName() + ".rootDir";
+    private static final String CHUNKS_DIR = "chunks";
+    private static final String MANIFESTS_DIR = "manifests";
+    private static final String MANIFEST_EXTENSION = ".manifest";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ChunkStore INSTANCE = new ChunkStore();
+
+    private static final ExecutorService INGEST_EXECUTOR = Executors.newFixedThreadPool(INGEST_THREADS,
+            new NamingThreadFactory(new DaemonThreadFactory(), "SpoonChunkStore.ingest"));
+
+    private final Map<String, Integer> referenceCounts = Maps.newHashMap();
+    private final Set<String> buildIds = Sets.newHashSet();
+
+    private boolean loaded;
+
+    private ChunkStore() {
+    }
+
+    public static ChunkStore getInstance() {
+        return INSTANCE;
+    }
+
+    private static File getRootDir() {
+        String rootDir = System.getProperty(ROOT_DIR_PROPERTY);
+        if (rootDir != null) {
+            return new File(rootDir);
+        }
+        return new File(Jenkins.getInstance().getRootDir(), "spoon-chunk-store");
+    }
+
+    private static File getChunkFile(String hash) {
+        return new File(new File(new File(getRootDir(), CHUNKS_DIR), hash.substring(0, 2)), hash);
+    }
+
+    private static File getManifestDir(String buildId) {
+        return new File(new File(getRootDir(), MANIFESTS_DIR), Util.getDigestOf(buildId));
+    }
+
+    private static File getManifestFile(String buildId, String fileName) {
+        return new File(getManifestDir(buildId), fileName + MANIFEST_EXTENSION);
+    }
+
+    private static boolean isOwnedBy(String buildId, String fullName) {
+        return buildId.startsWith(fullName + '#') || buildId.startsWith(fullName + '/');
+    }
+
+    /**
+     * Splits the stream into chunks and stores the chunks that are not present yet.
+     * Chunk boundaries are found on the calling thread, while chunks are hashed and written by a pool of threads.
+     */
+    public IngestResult ingest(String buildId, String fileName, InputStream in) throws IOException, InterruptedException {
+        checkArgument(buildId != null, REQUIRE_NOT_NULL_S, "buildId");
+        checkArgument(fileName != null, REQUIRE_NOT_NULL_S, "fileName");
+        checkArgument(in != null, REQUIRE_NOT_NULL_S, "in");
+
+        synchronized (this) {
+            this.load();
+        }
+
+        final List<Future<StoredChunk>> pendingChunks = Lists.newArrayList();
+        final Semaphore permits = new Semaphore(MAX_PENDING_CHUNKS);
+        ChunkingOutputStream chunker = new ChunkingOutputStream(new ChunkingOutputStream.ChunkHandler() {
+            @Override
+            public void onChunk(byte[] chunk) throws IOException {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException ex) {
+                    throw (IOException) new InterruptedIOException().initCause(ex);
+                }
+                pendingChunks.add(INGEST_EXECUTOR.submit(new StoreChunkTask(chunk, permits)));
+            }
+        });
+
+        boolean completed = false;
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                chunker.write(buffer, 0, read);
+            }
+            chunker.close();
+
+            List<ChunkManifest.Chunk> chunks = Lists.newArrayListWithCapacity(pendingChunks.size());
+            int newChunkCount = 0;
+            long newBytes = 0;
+            for (Future<StoredChunk> pendingChunk : pendingChunks) {
+                StoredChunk storedChunk = getStoredChunk(pendingChunk);
+                chunks.add(new ChunkManifest.Chunk(storedChunk.getHash(), storedChunk.getLength()));
+                if (storedChunk.isCreated()) {
+                    newChunkCount++;
+                    newBytes += storedChunk.getLength();
+                }
+            }
+
+            ChunkManifest manifest = new ChunkManifest(buildId, fileName, chunker.getTotalBytes(), chunks);
+            synchronized (this) {
+                this.release(buildId, fileName);
+                this.writeManifest(manifest);
+                this.buildIds.add(buildId);
+            }
+            completed = true;
+            return new IngestResult(manifest, newChunkCount, newBytes);
+        } finally {
+            if (!completed) {
+                this.abandon(pendingChunks);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds a stored file, verifying the digest of each chunk.
+     */
+    public void restore(String buildId, String fileName, OutputStream out) throws IOException {
+        File manifestFile = getManifestFile(buildId, fileName);
+        if (!manifestFile.exists()) {
+            throw new FileNotFoundException(String.format("Chunk manifest of %s in build %s does not exist", fileName, buildId));
+        }
+
+        ChunkManifest manifest = ChunkManifest.read(manifestFile);
+        for (ChunkManifest.Chunk chunk : manifest.getChunks()) {
+            byte[] content = Files.toByteArray(getChunkFile(chunk.getHash()));
+            String hash = Hashing.sha256().hashBytes(content).toString();
+            if (content.length != chunk.getLength() || !hash.equals(chunk.getHash())) {
+                throw new IOException(String.format("Chunk %s of %s in build %s is corrupted", chunk.getHash(), fileName, buildId));
+            }
+            out.write(content);
+        }
+    }
+
+    public synchronized void release(String buildId) {
+        this.load();
+
+        if (!this.buildIds.remove(buildId)) {
+            return;
+        }
+
+        File manifestDir = getManifestDir(buildId);
+        File[] manifestFiles = manifestDir.listFiles();
+        if (manifestFiles != null) {
+            for (File manifestFile : manifestFiles) {
+                this.release(manifestFile);
+            }
+        }
+        if (!manifestDir.delete()) {
+            LOGGER.log(Level.FINE, "Failed to delete chunk manifest directory {0}", manifestDir);
+        }
+    }
+
+    synchronized void releaseAll(String fullName) {
+        this.load();
+
+        for (String buildId : Lists.newArrayList(this.buildIds)) {
+            if (isOwnedBy(buildId, fullName)) {
+                this.release(buildId);
+            }
+        }
+    }
+
+    synchronized void relocate(String oldFullName, String newFullName) {
+        this.load();
+
+        for (String buildId : Lists.newArrayList(this.buildIds)) {
+            if (!isOwnedBy(buildId, oldFullName)) {
+                continue;
+            }
+
+            String newBuildId = newFullName + buildId.substring(oldFullName.length());
+            File manifestDir = getManifestDir(buildId);
+            File[] manifestFiles = manifestDir.listFiles();
+            if (manifestFiles != null) {
+                for (File manifestFile : manifestFiles) {
+                    try {
+                        ChunkManifest manifest = ChunkManifest.read(manifestFile).withBuildId(newBuildId);
+                        this.writeManifest(manifest);
+                        if (!manifestFile.delete()) {
+                            LOGGER.log(Level.WARNING, "Failed to delete relocated chunk manifest {0}", manifestFile);
+                        }
+                    } catch (IOException ex) {
+                        LOGGER.log(Level.WARNING, "Failed to relocate chunk manifest " + manifestFile, ex);
+                    }
+                }
+            }
+            manifestDir.delete();
+
+            this.buildIds.remove(buildId);
+            this.buildIds.add(newBuildId);
+        }
+    }
+
+    synchronized void releaseDeletedBuilds() {
+        this.load();
+
+        for (String buildId : Lists.newArrayList(this.buildIds)) {
+            Run<?, ?> run;
+            try {
+                run = Run.fromExternalizableId(buildId);
+            } catch (IllegalArgumentException ex) {
+                run = null;
+            }
+
+            if (run == null) {
+                LOGGER.log(Level.INFO, "Releasing chunks of deleted build {0}", buildId);
+                this.release(buildId);
+            }
+        }
+    }
+
+    private void release(String buildId, String fileName) {
+        File manifestFile = getManifestFile(buildId, fileName);
+        if (manifestFile.exists()) {
+            this.release(manifestFile);
+        }
+    }
+
+    private void release(File manifestFile) {
+        try {
+            ChunkManifest manifest = ChunkManifest.read(manifestFile);
+            for (ChunkManifest.Chunk chunk : manifest.getChunks()) {
+                this.releaseChunk(chunk.getHash());
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to read chunk manifest " + manifestFile + ". Its chunks are released when the store is loaded again", ex);
+        }
+
+        if (!manifestFile.delete()) {
+            LOGGER.log(Level.WARNING, "Failed to delete chunk manifest {0}", manifestFile);
+        }
+    }
+
+    private void abandon(List<Future<StoredChunk>> pendingChunks) {
+        for (Future<StoredChunk> pendingChunk : pendingChunks) {
+            try {
+                StoredChunk storedChunk = getStoredChunk(pendingChunk);
+                synchronized (this) {
+                    this.releaseChunk(storedChunk.getHash());
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, "Chunk of an abandoned file was not stored", ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                LOGGER.log(Level.WARNING, "Interrupted while abandoning chunks. Unreferenced chunks are deleted when the store is loaded again", ex);
+                return;
+            }
+        }
+    }
+
+    private static StoredChunk getStoredChunk(Future<StoredChunk> pendingChunk) throws IOException, InterruptedException {
+        try {
+            return pendingChunk.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to store chunk", cause);
+        }
+    }
+
+    private synchronized void retainChunk(String hash) {
+        Integer count = this.referenceCounts.get(hash);
+        this.referenceCounts.put(hash, (count == null) ? 1 : count + 1);
+    }
+
+    private void releaseChunk(String hash) {
+        Integer count = this.referenceCounts.get(hash);
+        if (count == null) {
+            return;
+        }
+
+        if (count > 1) {
+            this.referenceCounts.put(hash, count - 1);
+            return;
+        }
+
+        this.referenceCounts.remove(hash);
+        File chunkFile = getChunkFile(hash);
+        if (chunkFile.exists() && !chunkFile.delete()) {
+            LOGGER.log(Level.WARNING, "Failed to delete unreferenced chunk {0}", chunkFile);
+        }
+    }
+
+    private void writeManifest(ChunkManifest manifest) throws IOException {
+        File manifestFile = getManifestFile(manifest.getBuildId(), manifest.getFileName());
+        File manifestDir = manifestFile.getParentFile();
+        if (!manifestDir.isDirectory() && !manifestDir.mkdirs()) {
+            throw new IOException(String.format("Failed to create chunk manifest directory (%s)", manifestDir));
+        }
+
+        File temporary = new File(manifestDir, manifestFile.getName() + TEMPORARY_SUFFIX);
+        manifest.write(temporary);
+        if (!temporary.renameTo(manifestFile)) {
+            temporary.delete();
+            throw new IOException(String.format("Failed to move chunk manifest into place (%s)", manifestFile));
+        }
+    }
+
+    private void load() {
+        if (this.loaded) {
+            return;
+        }
+
+        this.loaded = true;
+        File[] manifestDirs = new File(getRootDir(), MANIFESTS_DIR).listFiles();
+        if (manifestDirs != null) {
+            for (File manifestDir : manifestDirs) {
+                File[] manifestFiles = manifestDir.listFiles();
+                if (manifestFiles == null) {
+                    continue;
+                }
+
+                for (File manifestFile : manifestFiles) {
+                    if (!manifestFile.getName().endsWith(MANIFEST_EXTENSION)) {
+                        manifestFile.delete();
+                        continue;
+                    }
+
+                    try {
+                        ChunkManifest manifest = ChunkManifest.read(manifestFile);
+                        for (ChunkManifest.Chunk chunk : manifest.getChunks()) {
+                            this.retainChunk(chunk.getHash());
+                        }
+                        this.buildIds.add(manifest.getBuildId());
+                    } catch (IOException ex) {
+                        LOGGER.log(Level.WARNING, "Ignoring unreadable chunk manifest " + manifestFile, ex);
+                    }
+                }
+            }
+        }
+
+        this.deleteUnreferencedChunks();
+    }
+
+    private void deleteUnreferencedChunks() {
+        File[] chunkDirs = new File(getRootDir(), CHUNKS_DIR).listFiles();
+        if (chunkDirs == null) {
+            return;
+        }
+
+        int deletedCount = 0;
+        for (File chunkDir : chunkDirs) {
+            File[] chunkFiles = chunkDir.listFiles();
+            if (chunkFiles == null) {
+                continue;
+            }
+
+            for (File chunkFile : chunkFiles) {
+                if (!this.referenceCounts.containsKey(chunkFile.getName()) && chunkFile.delete()) {
+                    deletedCount++;
+                }
+            }
+        }
+
+        if (deletedCount > 0) {
+            LOGGER.log(Level.INFO, "Deleted {0} unreferenced chunks", deletedCount);
+        }
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void releaseDeletedBuildsOnStartup() {
+        INSTANCE.releaseDeletedBuilds();
+    }
+
+    @Data
+    public static final class IngestResult {
+        private final ChunkManifest manifest;
+        private final int newChunkCount;
+        private final long newBytes;
+    }
+
+    @Data
+    private static final class StoredChunk {
+        private final String hash;
+        private final int length;
+        private final boolean created;
+    }
+
+    private final class StoreChunkTask implements Callable<StoredChunk> {
+
+        private final byte[] chunk;
+        private final Semaphore permits;
+
+        StoreChunkTask(byte[] chunk, Semaphore permits) {
+            this.chunk = chunk;
+            this.permits = permits;
+        }
+
+        @Override
+        public StoredChunk call() throws IOException {
+            try {
+                String hash = Hashing.sha256().hashBytes(this.chunk).toString();
+                retainChunk(hash);
+
+                boolean created = false;
+                try {
+                    created = this.write(getChunkFile(hash));
+                } catch (IOException ex) {
+                    synchronized (ChunkStore.this) {
+                        releaseChunk(hash);
+                    }
+                    throw ex;
+                }
+                return new StoredChunk(hash, this.chunk.length, created);
+            } finally {
+                this.permits.release();
+            }
+        }
+
+        private boolean write(File chunkFile) throws IOException {
+            if (chunkFile.exists()) {
+                return false;
+            }
+
+            File chunkDir = chunkFile.getParentFile();
+            if (!chunkDir.isDirectory() && !chunkDir.mkdirs() && !chunkDir.isDirectory()) {
+                throw new IOException(String.format("Failed to create chunk directory (%s)", chunkDir));
+            }
+
+            File temporary = File.createTempFile(chunkFile.getName(), TEMPORARY_SUFFIX, chunkDir);
+            try {
+                Files.write(this.chunk, temporary);
+                if (temporary.renameTo(chunkFile)) {
+                    return true;
+                }
+                if (chunkFile.exists()) {
+                    return false;
+                }
+                throw new IOException(String.format("Failed to move chunk into place (%s)", chunkFile));
+            } finally {
+                if (temporary.exists()) {
+                    temporary.delete();
+                }
+            }
+        }
+    }
+
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run> {
+
+        @Override
+        public void onDeleted(Run run) {
+            INSTANCE.release(run.getExternalizableId());
+        }
+    }
+
+    @Extension
+    public static final class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onDeleted(Item item) {
+            INSTANCE.releaseAll(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            INSTANCE.relocate(oldFullName, newFullName);
+        }
+    }
+}
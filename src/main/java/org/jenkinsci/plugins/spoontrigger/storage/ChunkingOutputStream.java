@@ -0,0 +1,87 @@
+package org.jenkinsci.plugins.spoontrigger.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Splits the written bytes into content-defined chunks using a gear rolling hash.
+ * A boundary is placed where the top bits of the hash are zero, so an insertion or removal only changes
+ * the chunks around it and the remaining chunks of a similar file are identical.
+ */
+final class ChunkingOutputStream extends OutputStream {
+
+    static final int MIN_CHUNK_SIZE = 256 * 1024;
+    static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final int AVERAGE_CHUNK_BITS = 20;
+    private static final long BOUNDARY_MASK = ((1L << AVERAGE_CHUNK_BITS) - 1) << (Long.SIZE - AVERAGE_CHUNK_BITS);
+    private static final long GEAR_SEED = 0x53706f6f6eL;
+    private static final long[] GEAR = createGearTable();
+
+    private final ChunkHandler handler;
+    private final byte[] buffer = new byte[MAX_CHUNK_SIZE];
+
+    private int length;
+    private long hash;
+    private long totalBytes;
+
+    ChunkingOutputStream(ChunkHandler handler) {
+        this.handler = handler;
+    }
+
+    private static long[] createGearTable() {
+        Random random = new Random(GEAR_SEED);
+        long[] table = new long[256];
+        for (int i = 0; i < table.length; ++i) {
+            table[i] = random.nextLong();
+        }
+        return table;
+    }
+
+    long getTotalBytes() {
+        return this.totalBytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        for (int i = off; i < end; ++i) {
+            byte value = b[i];
+            this.buffer[this.length++] = value;
+
+            // the hash depends only on the last 64 bytes, so bytes that cannot reach a boundary are not hashed
+            if (this.length > MIN_CHUNK_SIZE - Long.SIZE) {
+                this.hash = (this.hash << 1) + GEAR[value & 0xff];
+                if (this.length == MAX_CHUNK_SIZE || (this.length >= MIN_CHUNK_SIZE && (this.hash & BOUNDARY_MASK) == 0)) {
+                    this.emit();
+                }
+            }
+        }
+        this.totalBytes += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.length > 0) {
+            this.emit();
+        }
+    }
+
+    private void emit() throws IOException {
+        byte[] chunk = Arrays.copyOf(this.buffer, this.length);
+        this.length = 0;
+        this.hash = 0;
+        this.handler.onChunk(chunk);
+    }
+
+    interface ChunkHandler {
+        void onChunk(byte[] chunk) throws IOException;
+    }
+}
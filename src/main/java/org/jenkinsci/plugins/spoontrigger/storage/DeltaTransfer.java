@@ -0,0 +1,400 @@
+package org.jenkinsci.plugins.spoontrigger.storage;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.CountingInputStream;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.security.MasterToSlaveFileCallable;
+import lombok.Data;
+import org.apache.commons.io.output.TeeOutputStream;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.jenkinsci.plugins.spoontrigger.Messages.REQUIRE_NOT_NULL_S;
+
+/**
+ * Transfers a file from a node to the master in the way rsync does. The master sends block signatures of a basis file
+ * it already has, the node finds those blocks in the new file using a rolling checksum and encodes the new file as
+ * references to basis blocks and compressed literal bytes, and the master rebuilds the file from the basis and the delta.
+ * <p/>
+ * The rebuilt file is verified against the SHA-256 digest computed on the node, and block signatures of the rebuilt file
+ * are computed while it is written, so it can serve as the basis of the next transfer without being read again.
+ */
+public final class DeltaTransfer {
+
+    private static final int END = 0;
+    private static final int COPY = 1;
+    private static final int LITERAL = 2;
+
+    private static final int MAX_LITERAL_LENGTH = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private DeltaTransfer() {
+    }
+
+    /**
+     * @param source         file on the node
+     * @param deltaFile      file on the node to which the delta is written before it is sent
+     * @param basis          basis file on the master, or null to send the whole file
+     * @param basisSignature signatures of the basis file, or null to send the whole file
+     * @param target         file on the master that is replaced with the rebuilt file
+     */
+    public static Result transfer(FilePath source, FilePath deltaFile, @Nullable File basis, @Nullable BlockSignatures basisSignature,
+                                  File target) throws IOException, InterruptedException {
+        checkArgument(source != null, REQUIRE_NOT_NULL_S, "source");
+        checkArgument(deltaFile != null, REQUIRE_NOT_NULL_S, "deltaFile");
+        checkArgument(target != null, REQUIRE_NOT_NULL_S, "target");
+
+        if (basis == null || basisSignature == null) {
+            basis = null;
+            basisSignature = BlockSignatures.empty(BlockSignatures.DEFAULT_BLOCK_SIZE);
+        }
+
+        EncodeResult encodeResult = source.act(new EncodeCallable(deltaFile.getRemote(), basisSignature));
+
+        File temporary = new File(target.getPath() + TEMPORARY_SUFFIX);
+        boolean moved = false;
+        try {
+            BlockSignatures.Builder signatureBuilder = new BlockSignatures.Builder(basisSignature.getBlockSize());
+            MessageDigest digest = createDigest();
+            long sentBytes;
+
+            CountingInputStream deltaIn = new CountingInputStream(deltaFile.read());
+            FileOutputStream fileOut = new FileOutputStream(temporary);
+            try {
+                OutputStream out = new DigestOutputStream(new TeeOutputStream(new BufferedOutputStream(fileOut, BUFFER_SIZE), signatureBuilder), digest);
+                apply(new DataInputStream(new BufferedInputStream(new InflaterInputStream(deltaIn), BUFFER_SIZE)), basis, basisSignature.getBlockSize(), out);
+                out.flush();
+                fileOut.getFD().sync();
+                sentBytes = deltaIn.getCount();
+            } finally {
+                fileOut.close();
+                deltaIn.close();
+            }
+
+            String sha256 = Util.toHexString(digest.digest());
+            if (temporary.length() != encodeResult.getTotalBytes() || !sha256.equals(encodeResult.getSha256())) {
+                throw new IOException(String.format("Rebuilt file (%s) does not match the file on the node: %d bytes with SHA-256 %s, expected %d bytes with SHA-256 %s",
+                        target.getName(), temporary.length(), sha256, encodeResult.getTotalBytes(), encodeResult.getSha256()));
+            }
+
+            if (target.exists() && !target.delete()) {
+                throw new IOException(String.format("Failed to replace existing file (%s)", target));
+            }
+            if (!temporary.renameTo(target)) {
+                throw new IOException(String.format("Failed to move %s to %s", temporary, target));
+            }
+            moved = true;
+
+            return new Result(sha256, encodeResult.getTotalBytes(), encodeResult.getLiteralBytes(), sentBytes,
+                    basisSignature.getSerializedSize(), signatureBuilder.build());
+        } finally {
+            if (!moved && temporary.exists() && !temporary.delete()) {
+                temporary.deleteOnExit();
+            }
+            deltaFile.delete();
+        }
+    }
+
+    private static void apply(DataInputStream delta, @Nullable File basis, int blockSize, OutputStream out) throws IOException, InterruptedException {
+        RandomAccessFile basisFile = (basis == null) ? null : new RandomAccessFile(basis, "r");
+        try {
+            byte[] buffer = new byte[Math.max(BUFFER_SIZE, blockSize)];
+            while (true) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                int instruction = delta.readUnsignedByte();
+                if (instruction == END) {
+                    return;
+                }
+
+                if (instruction == COPY) {
+                    int firstBlock = delta.readInt();
+                    int blockCount = delta.readInt();
+                    if (basisFile == null) {
+                        throw new IOException("Delta refers to blocks of a basis file that does not exist");
+                    }
+
+                    basisFile.seek((long) firstBlock * blockSize);
+                    long remaining = (long) blockCount * blockSize;
+                    while (remaining > 0) {
+                        int count = (int) Math.min(remaining, buffer.length);
+                        basisFile.readFully(buffer, 0, count);
+                        out.write(buffer, 0, count);
+                        remaining -= count;
+                    }
+                } else if (instruction == LITERAL) {
+                    int remaining = delta.readInt();
+                    while (remaining > 0) {
+                        int count = Math.min(remaining, buffer.length);
+                        delta.readFully(buffer, 0, count);
+                        out.write(buffer, 0, count);
+                        remaining -= count;
+                    }
+                } else {
+                    throw new IOException(String.format("Delta contains an unknown instruction (%d)", instruction));
+                }
+            }
+        } finally {
+            if (basisFile != null) {
+                basisFile.close();
+            }
+        }
+    }
+
+    private static MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(DIGEST_ALGORITHM + " is not supported", ex);
+        }
+    }
+
+    @Data
+    public static final class Result {
+        private final String sha256;
+        private final long totalBytes;
+        private final long literalBytes;
+        private final long sentBytes;
+        private final long signatureBytes;
+        private final BlockSignatures signatures;
+    }
+
+    @Data
+    private static final class EncodeResult implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String sha256;
+        private final long totalBytes;
+        private final long literalBytes;
+    }
+
+    private static final class EncodeCallable extends MasterToSlaveFileCallable<EncodeResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String deltaPath;
+        private final BlockSignatures basisSignature;
+
+        EncodeCallable(String deltaPath, BlockSignatures basisSignature) {
+            this.deltaPath = deltaPath;
+            this.basisSignature = basisSignature;
+        }
+
+        @Override
+        public EncodeResult invoke(File source, VirtualChannel channel) throws IOException, InterruptedException {
+            InputStream in = new FileInputStream(source);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new DeflaterOutputStream(new FileOutputStream(this.deltaPath), new Deflater(Deflater.BEST_SPEED), BUFFER_SIZE), BUFFER_SIZE));
+            try {
+                Encoder encoder = new Encoder(this.basisSignature, in, out);
+                encoder.encode();
+                out.writeByte(END);
+                out.close();
+                return new EncodeResult(Util.toHexString(encoder.digest.digest()), encoder.totalBytes, encoder.literalBytes);
+            } finally {
+                in.close();
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Slides a window of the block size over the new file. When the window matches a basis block, the bytes before it
+     * are written as a literal and the block as a reference, otherwise the window is rolled forward by one byte.
+     */
+    private static final class Encoder {
+
+        private final BlockSignatures signatures;
+        private final Map<Integer, int[]> blocksByWeak;
+        private final InputStream in;
+        private final DataOutputStream out;
+        private final int blockSize;
+        private final byte[] buffer;
+        private final MessageDigest digest;
+        private final MessageDigest strongDigest;
+
+        private int literalStart;
+        private int position;
+        private int limit;
+        private boolean endOfStream;
+
+        private int pendingFirstBlock = -1;
+        private int pendingBlockCount;
+
+        private long totalBytes;
+        private long literalBytes;
+
+        Encoder(BlockSignatures signatures, InputStream in, DataOutputStream out) throws IOException {
+            this.signatures = signatures;
+            this.blocksByWeak = indexBlocks(signatures);
+            this.in = in;
+            this.out = out;
+            this.blockSize = signatures.getBlockSize();
+            this.buffer = new byte[MAX_LITERAL_LENGTH + 2 * this.blockSize];
+            this.digest = createDigest();
+            this.strongDigest = BlockSignatures.createStrongDigest();
+        }
+
+        private static Map<Integer, int[]> indexBlocks(BlockSignatures signatures) {
+            Map<Integer, int[]> blocksByWeak = Maps.newHashMapWithExpectedSize(signatures.getBlockCount());
+            for (int block = 0; block < signatures.getBlockCount(); ++block) {
+                Integer weak = signatures.getWeak(block);
+                int[] blocks = blocksByWeak.get(weak);
+                if (blocks == null) {
+                    blocksByWeak.put(weak, new int[]{block});
+                } else {
+                    int[] extended = new int[blocks.length + 1];
+                    System.arraycopy(blocks, 0, extended, 0, blocks.length);
+                    extended[blocks.length] = block;
+                    blocksByWeak.put(weak, extended);
+                }
+            }
+            return blocksByWeak;
+        }
+
+        void encode() throws IOException, InterruptedException {
+            int a = 0;
+            int b = 0;
+            boolean windowValid = false;
+
+            while (true) {
+                if (!this.ensureAvailable(this.blockSize)) {
+                    break;
+                }
+
+                if (!windowValid) {
+                    int weak = BlockSignatures.weakChecksum(this.buffer, this.position, this.blockSize);
+                    a = weak & 0xffff;
+                    b = weak >>> 16;
+                    windowValid = true;
+                }
+
+                int block = this.findBlock(BlockSignatures.toWeak(a, b));
+                if (block >= 0) {
+                    this.flushLiteral(this.position);
+                    this.addCopy(block);
+                    this.position += this.blockSize;
+                    this.literalStart = this.position;
+                    windowValid = false;
+                    continue;
+                }
+
+                if (!this.ensureAvailable(this.blockSize + 1)) {
+                    break;
+                }
+
+                int removed = this.buffer[this.position] & 0xff;
+                int added = this.buffer[this.position + this.blockSize] & 0xff;
+                a = (a - removed + added) & 0xffff;
+                b = (b - this.blockSize * removed + a) & 0xffff;
+                this.position++;
+
+                if (this.position - this.literalStart >= MAX_LITERAL_LENGTH) {
+                    this.flushLiteral(this.position);
+                }
+            }
+
+            this.flushLiteral(this.limit);
+            this.flushCopy();
+        }
+
+        private int findBlock(int weak) {
+            int[] candidates = this.blocksByWeak.get(weak);
+            if (candidates == null) {
+                return -1;
+            }
+
+            this.strongDigest.update(this.buffer, this.position, this.blockSize);
+            byte[] strong = this.strongDigest.digest();
+            for (int candidate : candidates) {
+                if (this.signatures.isStrongEqual(candidate, strong)) {
+                    return candidate;
+                }
+            }
+            return -1;
+        }
+
+        private boolean ensureAvailable(int count) throws IOException, InterruptedException {
+            while (this.limit - this.position < count && !this.endOfStream) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                if (this.limit == this.buffer.length) {
+                    this.compact();
+                }
+
+                int read = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+                if (read == -1) {
+                    this.endOfStream = true;
+                } else {
+                    this.digest.update(this.buffer, this.limit, read);
+                    this.limit += read;
+                    this.totalBytes += read;
+                }
+            }
+            return this.limit - this.position >= count;
+        }
+
+        private void compact() {
+            int retained = this.limit - this.literalStart;
+            System.arraycopy(this.buffer, this.literalStart, this.buffer, 0, retained);
+            this.position -= this.literalStart;
+            this.limit = retained;
+            this.literalStart = 0;
+        }
+
+        private void addCopy(int block) throws IOException {
+            if (this.pendingFirstBlock >= 0 && block == this.pendingFirstBlock + this.pendingBlockCount) {
+                this.pendingBlockCount++;
+                return;
+            }
+
+            this.flushCopy();
+            this.pendingFirstBlock = block;
+            this.pendingBlockCount = 1;
+        }
+
+        private void flushCopy() throws IOException {
+            if (this.pendingFirstBlock < 0) {
+                return;
+            }
+
+            this.out.writeByte(COPY);
+            this.out.writeInt(this.pendingFirstBlock);
+            this.out.writeInt(this.pendingBlockCount);
+            this.pendingFirstBlock = -1;
+            this.pendingBlockCount = 0;
+        }
+
+        private void flushLiteral(int end) throws IOException {
+            int length = end - this.literalStart;
+            if (length == 0) {
+                return;
+            }
+
+            this.flushCopy();
+            this.out.writeByte(LITERAL);
+            this.out.writeInt(length);
+            this.out.write(this.buffer, this.literalStart, length);
+            this.literalStart = end;
+            this.literalBytes += length;
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package org.jenkinsci.plugins.spoontrigger.storage;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.security.MasterToSlaveFileCallable;
+import lombok.Data;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.jenkinsci.plugins.spoontrigger.Messages.REQUIRE_NOT_NULL_S;
+
+/**
+ * Uploads a file from the node that owns it to an S3-compatible object store using a multipart upload.
+ * <p/>
+ * The file is read once, in parts that are uploaded concurrently. Memory is bounded by reusing one buffer per concurrent part.
+ * Each part is sent with its MD5 digest, which the store checks. Failed parts are retried with backoff. A resumable upload
+ * that fails is left open, so the next upload of the same object resumes it and skips parts that were already stored
+ * with the same content. Any other upload that fails is aborted, so the store does not keep its parts.
+ */
+public final class MultipartUpload {
+
+    public static final int PART_SIZE = Integer.getInteger(MultipartUpload.class.getName() + ".partSizeMegabytes", 16) * 1024 * 1024;
+    public static final int CONCURRENCY = Integer.getInteger(MultipartUpload.class.getName() + ".concurrency", 4);
+    static final int MAX_ATTEMPTS = Math.max(1, Integer.getInteger(MultipartUpload.class.getName() + ".maxAttempts", 5));
+    static final long RETRY_DELAY_MILLIS = Long.getLong(MultipartUpload.class.getName() + ".retryDelayMillis", 1000);
+
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    private static final int MAX_PART_COUNT = 10000;
+
+    private MultipartUpload() {
+    }
+
+    public static Result upload(FilePath file, ObjectStoreClient client, String bucket, String key, boolean resumable,
+                                TaskListener listener) throws IOException, InterruptedException {
+        checkArgument(file != null, REQUIRE_NOT_NULL_S, "file");
+        checkArgument(client != null, REQUIRE_NOT_NULL_S, "client");
+        checkArgument(bucket != null, REQUIRE_NOT_NULL_S, "bucket");
+        checkArgument(key != null, REQUIRE_NOT_NULL_S, "key");
+
+        return file.act(new UploadCallable(client, bucket, key, Math.max(PART_SIZE, MIN_PART_SIZE), Math.max(CONCURRENCY, 1),
+                resumable, listener));
+    }
+
+    private static IOException onFailedRequest(String operation, ObjectStoreClient.Response response) {
+        return new IOException(String.format("Failed to %s: the object store returned status %d. %s",
+                operation, response.getStatus(), response.getBodyAsString()));
+    }
+
+    private static String unquote(@Nullable String eTag) {
+        if (eTag == null) {
+            return "";
+        }
+        return eTag.replace("\"", "").trim();
+    }
+
+    @Nullable
+    private static String getText(Element element, String tagName) {
+        NodeList nodes = element.getElementsByTagName(tagName);
+        return (nodes.getLength() == 0) ? null : nodes.item(0).getTextContent();
+    }
+
+    @Data
+    public static final class Result implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String uploadId;
+        private final String eTag;
+        private final String sha256;
+        private final long size;
+        private final int partCount;
+        private final int resumedPartCount;
+        private final int retryCount;
+    }
+
+    @Data
+    private static final class StoredPart {
+        private final String eTag;
+        private final long size;
+    }
+
+    @Data
+    private static final class UploadedPart {
+        private final int partNumber;
+        private final String eTag;
+        private final boolean resumed;
+        private final int retryCount;
+    }
+
+    private static final class UploadCallable extends MasterToSlaveFileCallable<Result> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ObjectStoreClient client;
+        private final String bucket;
+        private final String key;
+        private final int partSize;
+        private final int concurrency;
+        private final boolean resumable;
+        private final TaskListener listener;
+
+        UploadCallable(ObjectStoreClient client, String bucket, String key, int partSize, int concurrency, boolean resumable,
+                       TaskListener listener) {
+            this.client = client;
+            this.bucket = bucket;
+            this.key = key;
+            this.partSize = partSize;
+            this.concurrency = concurrency;
+            this.resumable = resumable;
+            this.listener = listener;
+        }
+
+        @Override
+        public Result invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
+            long partCount = Math.max(1, (file.length() + this.partSize - 1) / this.partSize);
+            if (partCount > MAX_PART_COUNT) {
+                throw new IOException(String.format("File (%s) needs %d parts of %d bytes, which is more than the object store supports (%d)",
+                        file, partCount, this.partSize, MAX_PART_COUNT));
+            }
+
+            Map<Integer, StoredPart> storedParts = Maps.newHashMap();
+            String uploadId = this.resumable ? this.findPendingUpload() : null;
+            if (uploadId != null) {
+                storedParts = this.listParts(uploadId);
+                if (storedParts == null) {
+                    uploadId = null;
+                    storedParts = Maps.newHashMap();
+                } else {
+                    this.listener.getLogger().println(String.format("Resuming upload %s of %s, %d parts are already stored", uploadId, this.key, storedParts.size()));
+                }
+            }
+            if (uploadId == null) {
+                uploadId = this.initiate();
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(this.concurrency,
+                    new NamingThreadFactory(new DaemonThreadFactory(), "SpoonMultipartUpload"));
+            boolean completed = false;
+            try {
+                BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(this.concurrency + 1);
+                int allocatedBuffers = 0;
+
+                MessageDigest fileDigest = createDigest("SHA-256");
+                List<Future<UploadedPart>> pendingParts = Lists.newArrayList();
+                long size = 0;
+
+                InputStream in = new FileInputStream(file);
+                try {
+                    for (int partNumber = 1; ; ++partNumber) {
+                        byte[] buffer = buffers.poll();
+                        if (buffer == null && allocatedBuffers <= this.concurrency) {
+                            buffer = new byte[this.partSize];
+                            allocatedBuffers++;
+                        } else if (buffer == null) {
+                            buffer = buffers.take();
+                        }
+
+                        int length = ByteStreams.read(in, buffer, 0, buffer.length);
+                        if (length == 0 && partNumber > 1) {
+                            break;
+                        }
+
+                        fileDigest.update(buffer, 0, length);
+                        size += length;
+                        pendingParts.add(executor.submit(new UploadPartTask(uploadId, partNumber, buffer, length,
+                                storedParts.get(partNumber), buffers)));
+                        checkFailedParts(pendingParts);
+
+                        if (length < buffer.length) {
+                            break;
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+
+                List<UploadedPart> uploadedParts = Lists.newArrayListWithCapacity(pendingParts.size());
+                for (Future<UploadedPart> pendingPart : pendingParts) {
+                    uploadedParts.add(getUploadedPart(pendingPart));
+                }
+
+                String eTag = this.complete(uploadId, uploadedParts);
+                completed = true;
+
+                int resumedPartCount = 0;
+                int retryCount = 0;
+                for (UploadedPart uploadedPart : uploadedParts) {
+                    resumedPartCount += uploadedPart.isResumed() ? 1 : 0;
+                    retryCount += uploadedPart.getRetryCount();
+                }
+                return new Result(uploadId, eTag, Util.toHexString(fileDigest.digest()), size, uploadedParts.size(), resumedPartCount, retryCount);
+            } finally {
+                executor.shutdownNow();
+                if (!completed) {
+                    this.onFailedUpload(uploadId, executor);
+                }
+            }
+        }
+
+        private void onFailedUpload(String uploadId, ExecutorService executor) {
+            if (this.resumable) {
+                this.listener.getLogger().println(String.format("Upload %s of %s failed. It is resumed by the next upload of the object", uploadId, this.key));
+                return;
+            }
+
+            try {
+                // parts still in flight would otherwise be stored after the abort
+                executor.awaitTermination(ObjectStoreClient.READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                ObjectStoreClient.Response response = this.client.execute("DELETE", this.bucket, this.key,
+                        ImmutableMap.of("uploadId", uploadId));
+                if (response.isSuccessful()) {
+                    this.listener.getLogger().println(String.format("Upload %s of %s failed and was aborted", uploadId, this.key));
+                } else {
+                    this.listener.error("Failed to abort upload %s of %s: the object store returned status %d",
+                            uploadId, this.key, response.getStatus());
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace(this.listener.error("Failed to abort upload %s of %s", uploadId, this.key));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                this.listener.error("Upload %s of %s was interrupted before it could be aborted", uploadId, this.key);
+            }
+        }
+
+        private static void checkFailedParts(List<Future<UploadedPart>> pendingParts) throws IOException, InterruptedException {
+            for (Future<UploadedPart> pendingPart : pendingParts) {
+                if (pendingPart.isDone()) {
+                    getUploadedPart(pendingPart);
+                }
+            }
+        }
+
+        private static UploadedPart getUploadedPart(Future<UploadedPart> pendingPart) throws IOException, InterruptedException {
+            try {
+                return pendingPart.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Failed to upload part", cause);
+            }
+        }
+
+        @Nullable
+        private String findPendingUpload() throws IOException {
+            ObjectStoreClient.Response response = this.client.execute("GET", this.bucket, null,
+                    ImmutableMap.of("uploads", "", "prefix", this.key));
+            if (!response.isSuccessful()) {
+                return null;
+            }
+
+            String uploadId = null;
+            String initiated = "";
+            NodeList uploads = ObjectStoreClient.parseXml(response.getBody()).getElementsByTagName("Upload");
+            for (int i = 0; i < uploads.getLength(); ++i) {
+                Element upload = (Element) uploads.item(i);
+                String uploadInitiated = getText(upload, "Initiated");
+                if (this.key.equals(getText(upload, "Key")) && uploadInitiated != null && uploadInitiated.compareTo(initiated) > 0) {
+                    uploadId = getText(upload, "UploadId");
+                    initiated = uploadInitiated;
+                }
+            }
+            return uploadId;
+        }
+
+        @Nullable
+        private Map<Integer, StoredPart> listParts(String uploadId) throws IOException {
+            Map<Integer, StoredPart> storedParts = Maps.newHashMap();
+            String marker = "0";
+            while (true) {
+                ObjectStoreClient.Response response = this.client.execute("GET", this.bucket, this.key,
+                        ImmutableMap.of("uploadId", uploadId, "part-number-marker", marker));
+                if (!response.isSuccessful()) {
+                    return null;
+                }
+
+                Document document = ObjectStoreClient.parseXml(response.getBody());
+                NodeList parts = document.getElementsByTagName("Part");
+                for (int i = 0; i < parts.getLength(); ++i) {
+                    Element part = (Element) parts.item(i);
+                    storedParts.put(Integer.parseInt(getText(part, "PartNumber")),
+                            new StoredPart(unquote(getText(part, "ETag")), Long.parseLong(getText(part, "Size"))));
+                }
+
+                String truncated = getText(document.getDocumentElement(), "IsTruncated");
+                String nextMarker = getText(document.getDocumentElement(), "NextPartNumberMarker");
+                if (!"true".equals(truncated) || nextMarker == null) {
+                    return storedParts;
+                }
+                marker = nextMarker;
+            }
+        }
+
+        private String initiate() throws IOException {
+            ObjectStoreClient.Response response = this.client.execute("POST", this.bucket, this.key,
+                    ImmutableMap.of("uploads", ""), new byte[0], 0, null);
+            if (!response.isSuccessful()) {
+                throw onFailedRequest("initiate multipart upload of " + this.key, response);
+            }
+
+            String uploadId = getText(ObjectStoreClient.parseXml(response.getBody()).getDocumentElement(), "UploadId");
+            if (uploadId == null) {
+                throw new IOException("Object store did not return an upload id for " + this.key);
+            }
+            return uploadId;
+        }
+
+        private String complete(String uploadId, List<UploadedPart> uploadedParts) throws IOException {
+            StringBuilder body = new StringBuilder("<CompleteMultipartUpload>");
+            for (UploadedPart uploadedPart : uploadedParts) {
+                body.append("<Part><PartNumber>").append(uploadedPart.getPartNumber()).append("</PartNumber>")
+                        .append("<ETag>\"").append(uploadedPart.getETag()).append("\"</ETag></Part>");
+            }
+            body.append("</CompleteMultipartUpload>");
+
+            byte[] content = body.toString().getBytes(Charsets.UTF_8);
+            ObjectStoreClient.Response response = this.client.execute("POST", this.bucket, this.key,
+                    ImmutableMap.of("uploadId", uploadId), content, content.length, null);
+            // the store may report a failure in the body of a successful response
+            if (!response.isSuccessful() || ObjectStoreClient.parseXml(response.getBody()).getElementsByTagName("Error").getLength() > 0) {
+                throw onFailedRequest("complete multipart upload of " + this.key, response);
+            }
+
+            return unquote(getText(ObjectStoreClient.parseXml(response.getBody()).getDocumentElement(), "ETag"));
+        }
+
+        private final class UploadPartTask implements Callable<UploadedPart> {
+
+            private final String uploadId;
+            private final int partNumber;
+            private final byte[] buffer;
+            private final int length;
+            @Nullable
+            private final StoredPart storedPart;
+            private final BlockingQueue<byte[]> buffers;
+
+            UploadPartTask(String uploadId, int partNumber, byte[] buffer, int length, @Nullable StoredPart storedPart, BlockingQueue<byte[]> buffers) {
+                this.uploadId = uploadId;
+                this.partNumber = partNumber;
+                this.buffer = buffer;
+                this.length = length;
+                this.storedPart = storedPart;
+                this.buffers = buffers;
+            }
+
+            @Override
+            public UploadedPart call() throws IOException, InterruptedException {
+                try {
+                    MessageDigest md5 = createDigest("MD5");
+                    md5.update(this.buffer, 0, this.length);
+                    byte[] digest = md5.digest();
+                    String md5Hex = Util.toHexString(digest);
+
+                    if (this.storedPart != null && this.storedPart.getSize() == this.length && md5Hex.equalsIgnoreCase(this.storedPart.getETag())) {
+                        return new UploadedPart(this.partNumber, this.storedPart.getETag(), true, 0);
+                    }
+
+                    return this.upload(BaseEncoding.base64().encode(digest), md5Hex);
+                } finally {
+                    this.buffers.offer(this.buffer);
+                }
+            }
+
+            private UploadedPart upload(String contentMd5, String md5Hex) throws IOException, InterruptedException {
+                Map<String, String> query = ImmutableMap.of("partNumber", Integer.toString(this.partNumber), "uploadId", this.uploadId);
+                IOException lastFailure = null;
+                for (int attempt = 0; attempt < MAX_ATTEMPTS; ++attempt) {
+                    if (attempt > 0) {
+                        listener.getLogger().println(String.format("Retrying part %d of %s: %s", this.partNumber, key, lastFailure.getMessage()));
+                        Thread.sleep(RETRY_DELAY_MILLIS << (attempt - 1));
+                    }
+
+                    try {
+                        ObjectStoreClient.Response response = client.execute("PUT", bucket, key, query, this.buffer, this.length, contentMd5);
+                        if (!response.isSuccessful()) {
+                            lastFailure = onFailedRequest(String.format("upload part %d of %s", this.partNumber, key), response);
+                            continue;
+                        }
+
+                        String eTag = unquote(response.getETag());
+                        // stores return the MD5 digest as the ETag of a part unless the part is encrypted with a managed key
+                        if (eTag.length() == md5Hex.length() && !eTag.equalsIgnoreCase(md5Hex)) {
+                            lastFailure = new IOException(String.format("Part %d of %s was corrupted in transfer: expected MD5 %s, the store computed %s",
+                                    this.partNumber, key, md5Hex, eTag));
+                            continue;
+                        }
+                        return new UploadedPart(this.partNumber, eTag, false, attempt);
+                    } catch (IOException ex) {
+                        lastFailure = ex;
+                    }
+                }
+                throw lastFailure;
+            }
+        }
+    }
+
+    private static MessageDigest createDigest(String algorithm) throws IOException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(algorithm + " is not supported", ex);
+        }
+    }
+}
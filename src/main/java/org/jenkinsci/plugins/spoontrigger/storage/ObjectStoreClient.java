@@ -0,0 +1,256 @@
+package org.jenkinsci.plugins.spoontrigger.storage;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import hudson.Util;
+import lombok.Getter;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TimeZone;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.jenkinsci.plugins.spoontrigger.Messages.REQUIRE_NOT_NULL_S;
+
+/**
+ * Sends requests to an S3-compatible object store, signed with AWS Signature Version 4.
+ * Buckets are addressed in the path of the endpoint, so stores without virtual-host addressing, such as a local MinIO, work as well.
+ */
+public final class ObjectStoreClient implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int CONNECT_TIMEOUT_MILLIS = Integer.getInteger(ObjectStoreClient.class.getName() + ".connectTimeoutMillis", 30 * 1000);
+    static final int READ_TIMEOUT_MILLIS = Integer.getInteger(ObjectStoreClient.class.getName() + ".readTimeoutMillis", 5 * 60 * 1000);
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String SERVICE = "s3";
+    private static final String TERMINATOR = "aws4_request";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String UNRESERVED_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_.~";
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private final String endpoint;
+    private final String region;
+    private final String accessKey;
+    private final String secretKey;
+
+    public ObjectStoreClient(String endpoint, String region, String accessKey, String secretKey) {
+        checkArgument(endpoint != null, REQUIRE_NOT_NULL_S, "endpoint");
+        checkArgument(region != null, REQUIRE_NOT_NULL_S, "region");
+        checkArgument(accessKey != null, REQUIRE_NOT_NULL_S, "accessKey");
+        checkArgument(secretKey != null, REQUIRE_NOT_NULL_S, "secretKey");
+
+        this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        this.region = region;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+    }
+
+    Response execute(String method, String bucket, @Nullable String key, Map<String, String> query) throws IOException {
+        return this.execute(method, bucket, key, query, new byte[0], 0, null);
+    }
+
+    Response execute(String method, String bucket, @Nullable String key, Map<String, String> query,
+                     byte[] body, int length, @Nullable String contentMd5) throws IOException {
+        URL baseUrl = new URL(this.endpoint);
+        String path = baseUrl.getPath() + '/' + encode(bucket, false);
+        if (key != null) {
+            path += '/' + encode(key, true);
+        }
+
+        SortedMap<String, String> sortedQuery = ImmutableSortedMap.copyOf(query);
+        StringBuilder canonicalQuery = new StringBuilder();
+        for (Map.Entry<String, String> parameter : sortedQuery.entrySet()) {
+            if (canonicalQuery.length() > 0) {
+                canonicalQuery.append('&');
+            }
+            canonicalQuery.append(encode(parameter.getKey(), false)).append('=').append(encode(parameter.getValue(), false));
+        }
+
+        URL url = new URL(baseUrl, (canonicalQuery.length() == 0) ? path : path + '?' + canonicalQuery);
+        String host = url.getHost();
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            host += ":" + url.getPort();
+        }
+
+        Date now = new Date();
+        String amzDate = format("yyyyMMdd'T'HHmmss'Z'", now);
+        String date = format("yyyyMMdd", now);
+        String payloadHash = sha256Hex(body, length);
+
+        SortedMap<String, String> headers = Maps.newTreeMap();
+        headers.put("host", host);
+        headers.put("x-amz-content-sha256", payloadHash);
+        headers.put("x-amz-date", amzDate);
+        if (contentMd5 != null) {
+            headers.put("content-md5", contentMd5);
+        }
+
+        StringBuilder canonicalHeaders = new StringBuilder();
+        StringBuilder signedHeaders = new StringBuilder();
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            canonicalHeaders.append(header.getKey()).append(':').append(header.getValue()).append('\n');
+            if (signedHeaders.length() > 0) {
+                signedHeaders.append(';');
+            }
+            signedHeaders.append(header.getKey());
+        }
+
+        String canonicalRequest = method + '\n' + path + '\n' + canonicalQuery + '\n' + canonicalHeaders + '\n' + signedHeaders + '\n' + payloadHash;
+        String scope = date + '/' + this.region + '/' + SERVICE + '/' + TERMINATOR;
+        String stringToSign = ALGORITHM + '\n' + amzDate + '\n' + scope + '\n' + sha256Hex(canonicalRequest.getBytes(Charsets.UTF_8));
+        String signature = Util.toHexString(this.sign(date, stringToSign));
+        String authorization = String.format("%s Credential=%s/%s, SignedHeaders=%s, Signature=%s",
+                ALGORITHM, this.accessKey, scope, signedHeaders, signature);
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            connection.setUseCaches(false);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                if (!"host".equals(header.getKey())) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+            connection.setRequestProperty("Authorization", authorization);
+
+            if ("PUT".equals(method) || "POST".equals(method)) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(length);
+                OutputStream out = connection.getOutputStream();
+                try {
+                    out.write(body, 0, length);
+                } finally {
+                    out.close();
+                }
+            }
+
+            int status = connection.getResponseCode();
+            InputStream in = (status >= HttpURLConnection.HTTP_BAD_REQUEST) ? connection.getErrorStream() : connection.getInputStream();
+            byte[] responseBody = new byte[0];
+            if (in != null) {
+                try {
+                    responseBody = ByteStreams.toByteArray(in);
+                } finally {
+                    in.close();
+                }
+            }
+            return new Response(status, connection.getHeaderField("ETag"), responseBody);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private byte[] sign(String date, String stringToSign) throws IOException {
+        byte[] key = hmac(("AWS4" + this.secretKey).getBytes(Charsets.UTF_8), date);
+        key = hmac(key, this.region);
+        key = hmac(key, SERVICE);
+        key = hmac(key, TERMINATOR);
+        return hmac(key, stringToSign);
+    }
+
+    private static byte[] hmac(byte[] key, String data) throws IOException {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
+            return mac.doFinal(data.getBytes(Charsets.UTF_8));
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("Failed to sign object store request", ex);
+        }
+    }
+
+    static String sha256Hex(byte[] data, int length) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, 0, length);
+            return Util.toHexString(digest.digest());
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("SHA-256 is not supported", ex);
+        }
+    }
+
+    private static String sha256Hex(byte[] data) throws IOException {
+        return sha256Hex(data, data.length);
+    }
+
+    private static String format(String pattern, Date date) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(pattern, Locale.ROOT);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat.format(date);
+    }
+
+    static String encode(String value, boolean keepSlash) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte character : value.getBytes(Charsets.UTF_8)) {
+            if (UNRESERVED_CHARACTERS.indexOf(character) >= 0 || (keepSlash && character == '/')) {
+                encoded.append((char) character);
+            } else {
+                encoded.append('%').append(HEX_DIGITS[(character >> 4) & 0xf]).append(HEX_DIGITS[character & 0xf]);
+            }
+        }
+        return encoded.toString();
+    }
+
+    static Document parseXml(byte[] content) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setExpandEntityReferences(false);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            return builder.parse(new ByteArrayInputStream(content));
+        } catch (ParserConfigurationException ex) {
+            throw new IOException("Failed to create XML parser", ex);
+        } catch (SAXException ex) {
+            throw new IOException("Object store returned malformed XML", ex);
+        }
+    }
+
+    static final class Response {
+        @Getter
+        private final int status;
+        @Nullable
+        @Getter
+        private final String eTag;
+        @Getter
+        private final byte[] body;
+
+        Response(int status, @Nullable String eTag, byte[] body) {
+            this.status = status;
+            this.eTag = eTag;
+            this.body = body;
+        }
+
+        boolean isSuccessful() {
+            return this.status >= 200 && this.status < 300;
+        }
+
+        String getBodyAsString() {
+            return new String(this.body, Charsets.UTF_8);
+        }
+    }
+}
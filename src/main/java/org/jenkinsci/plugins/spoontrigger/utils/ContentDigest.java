@@ -0,0 +1,88 @@
+package org.jenkinsci.plugins.spoontrigger.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.security.MasterToSlaveFileCallable;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.jenkinsci.plugins.spoontrigger.Messages.REQUIRE_NOT_NULL_S;
+
+/**
+ * Computes a SHA-256 digest of a script file and a manifest of a folder on the node that owns the script.
+ * The manifest covers relative paths, sizes and modification times, so file contents are not read.
+ */
+public final class ContentDigest {
+
+    private static final char SEPARATOR = '\0';
+
+    private ContentDigest() {
+    }
+
+    public static String compute(FilePath script, @Nullable String folder) throws IOException, InterruptedException {
+        checkArgument(script != null, REQUIRE_NOT_NULL_S, "script");
+
+        return script.act(new DigestCallable(folder));
+    }
+
+    private static final class DigestCallable extends MasterToSlaveFileCallable<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Nullable
+        private final String folder;
+
+        DigestCallable(@Nullable String folder) {
+            this.folder = folder;
+        }
+
+        @Override
+        public String invoke(File script, VirtualChannel channel) throws IOException, InterruptedException {
+            Hasher hasher = Hashing.sha256().newHasher();
+            hasher.putBytes(Files.toByteArray(script));
+
+            if (this.folder != null) {
+                File root = new File(this.folder);
+                if (!root.isAbsolute()) {
+                    root = new File(script.getParentFile(), this.folder);
+                }
+                hasher.putChar(SEPARATOR);
+                putManifest(hasher, root, "");
+            }
+            return hasher.hash().toString();
+        }
+
+        private static void putManifest(Hasher hasher, File directory, String relativePath) throws IOException, InterruptedException {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            File[] children = directory.listFiles();
+            if (children == null) {
+                return;
+            }
+
+            Arrays.sort(children);
+            for (File child : children) {
+                String childPath = relativePath + '/' + child.getName();
+                hasher.putString(childPath, Charsets.UTF_8).putChar(SEPARATOR);
+                if (child.isDirectory()) {
+                    if (!Util.isSymlink(child)) {
+                        putManifest(hasher, child, childPath);
+                    }
+                } else {
+                    hasher.putLong(child.length()).putLong(child.lastModified());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.spoontrigger.utils;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import hudson.Util;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public final class GlobMatcher {
+
+    private static final GlobMatcher EMPTY = new GlobMatcher(ImmutableList.<String>of(), null);
+    private static final Splitter PATTERN_SPLITTER = Splitter.on(CharMatcher.is(',').or(CharMatcher.WHITESPACE)).omitEmptyStrings().trimResults();
+    private static final String REGEX_SPECIAL_CHARACTERS = "\\.[]{}()<>+-=^$|!";
+
+    private final List<String> globs;
+    @Nullable
+    private final Pattern pattern;
+
+    private GlobMatcher(List<String> globs, @Nullable Pattern pattern) {
+        this.globs = globs;
+        this.pattern = pattern;
+    }
+
+    public static GlobMatcher empty() {
+        return EMPTY;
+    }
+
+    public static GlobMatcher compile(@Nullable String globs) {
+        String normalizedGlobs = Util.fixEmptyAndTrim(globs);
+        if (normalizedGlobs == null) {
+            return EMPTY;
+        }
+
+        return compile(PATTERN_SPLITTER.split(normalizedGlobs));
+    }
+
+    public static GlobMatcher compile(Iterable<String> globs) {
+        List<String> regexes = Lists.newArrayList();
+        for (String glob : globs) {
+            regexes.add("(?:" + toRegex(glob) + ")");
+        }
+
+        if (regexes.isEmpty()) {
+            return EMPTY;
+        }
+
+        Pattern pattern = Pattern.compile(Joiner.on('|').join(regexes));
+        return new GlobMatcher(ImmutableList.copyOf(globs), pattern);
+    }
+
+    static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() * 2);
+        for (int position = 0; position < glob.length(); ++position) {
+            char character = glob.charAt(position);
+            if (character == '*') {
+                boolean anyDepth = position + 1 < glob.length() && glob.charAt(position + 1) == '*';
+                if (anyDepth) {
+                    regex.append(".*");
+                    position++;
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else if (character == '?') {
+                regex.append("[^/]");
+            } else if (REGEX_SPECIAL_CHARACTERS.indexOf(character) >= 0) {
+                regex.append('\\').append(character);
+            } else {
+                regex.append(character);
+            }
+        }
+        return regex.toString();
+    }
+
+    public boolean isEmpty() {
+        return this.pattern == null;
+    }
+
+    public List<String> getGlobs() {
+        return this.globs;
+    }
+
+    public boolean matches(@Nullable String value) {
+        return value != null && this.pattern != null && this.pattern.matcher(value).matches();
+    }
+}
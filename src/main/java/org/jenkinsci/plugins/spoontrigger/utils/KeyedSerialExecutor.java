@@ -0,0 +1,149 @@
+package org.jenkinsci.plugins.spoontrigger.utils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import javax.annotation.Nullable;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.jenkinsci.plugins.spoontrigger.Messages.REQUIRE_NOT_NULL_S;
+
+/**
+ * Runs the tasks of each key one at a time, in submission order, on a shared pool of threads.
+ * A key holds at most one task waiting behind the running one: a newer task replaces the waiting one,
+ * so a slow key neither blocks other keys nor accumulates work. Keys the pool cannot accept yet are deferred
+ * until a thread becomes free, so no task is dropped.
+ */
+public final class KeyedSerialExecutor {
+
+    private static final Logger LOGGER = Logger.getLogger(KeyedSerialExecutor.class.getName());
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final ThreadPoolExecutor pool;
+    private final Map<Object, Lane> lanes = Maps.newHashMap();
+    private final LinkedList<Lane> deferredLanes = Lists.newLinkedList();
+
+    private long mergedCount;
+    private long rejectedCount;
+
+    public KeyedSerialExecutor(String name, int threadCount, int queueCapacity) {
+        checkArgument(threadCount > 0, "threadCount must be positive");
+        checkArgument(queueCapacity > 0, "queueCapacity must be positive");
+
+        this.pool = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity),
+                new NamingThreadFactory(new DaemonThreadFactory(), name),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    public synchronized void execute(Object key, Runnable task) {
+        checkArgument(key != null, REQUIRE_NOT_NULL_S, "key");
+        checkArgument(task != null, REQUIRE_NOT_NULL_S, "task");
+
+        Lane lane = this.lanes.get(key);
+        if (lane == null) {
+            lane = new Lane(key);
+            this.lanes.put(key, lane);
+        }
+
+        if (lane.waitingTask != null) {
+            this.mergedCount++;
+        }
+        lane.waitingTask = task;
+
+        if (!lane.scheduled) {
+            this.schedule(lane);
+        }
+    }
+
+    private void schedule(Lane lane) {
+        lane.scheduled = true;
+        try {
+            this.pool.execute(lane);
+        } catch (RejectedExecutionException ex) {
+            this.rejectedCount++;
+            this.deferredLanes.add(lane);
+        }
+    }
+
+    private synchronized void onCompleted(Lane lane) {
+        while (!this.deferredLanes.isEmpty() && this.pool.getQueue().remainingCapacity() > 0) {
+            this.schedule(this.deferredLanes.removeFirst());
+        }
+
+        lane.scheduled = false;
+        if (lane.waitingTask != null) {
+            this.schedule(lane);
+        } else {
+            this.lanes.remove(lane.key);
+        }
+    }
+
+    @Nullable
+    private synchronized Runnable takeTask(Lane lane) {
+        Runnable task = lane.waitingTask;
+        lane.waitingTask = null;
+        return task;
+    }
+
+    public int getThreadCount() {
+        return this.pool.getMaximumPoolSize();
+    }
+
+    public int getActiveCount() {
+        return this.pool.getActiveCount();
+    }
+
+    public synchronized int getQueuedCount() {
+        return this.pool.getQueue().size() + this.deferredLanes.size();
+    }
+
+    public long getCompletedCount() {
+        return this.pool.getCompletedTaskCount();
+    }
+
+    public synchronized long getMergedCount() {
+        return this.mergedCount;
+    }
+
+    public synchronized long getRejectedCount() {
+        return this.rejectedCount;
+    }
+
+    private final class Lane implements Runnable {
+        private final Object key;
+        @Nullable
+        private Runnable waitingTask;
+        private boolean scheduled;
+
+        Lane(Object key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Runnable task = takeTask(this);
+                if (task != null) {
+                    task.run();
+                }
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Task of (" + this.key + ") failed", ex);
+            } finally {
+                onCompleted(this);
+            }
+        }
+    }
+}
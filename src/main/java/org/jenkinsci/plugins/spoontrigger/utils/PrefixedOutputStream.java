@@ -0,0 +1,41 @@
+package org.jenkinsci.plugins.spoontrigger.utils;
+
+import hudson.console.LineTransformationOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Prefixes every line written to a shared stream. Whole lines are written under the shared stream's lock,
+ * so output of concurrent writers interleaves by line only.
+ */
+public final class PrefixedOutputStream extends LineTransformationOutputStream {
+
+    private final OutputStream out;
+    private final byte[] prefix;
+
+    public PrefixedOutputStream(OutputStream out, String prefix, Charset charset) {
+        this.out = out;
+        this.prefix = prefix.getBytes(charset);
+    }
+
+    @Override
+    protected void eol(byte[] bytes, int length) throws IOException {
+        synchronized (this.out) {
+            this.out.write(this.prefix);
+            this.out.write(bytes, 0, length);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        this.flush();
+    }
+}
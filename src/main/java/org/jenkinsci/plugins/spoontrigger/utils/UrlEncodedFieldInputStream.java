@@ -0,0 +1,139 @@
+package org.jenkinsci.plugins.spoontrigger.utils;
+
+import com.google.common.base.Charsets;
+import org.jenkinsci.plugins.spoontrigger.git.PushPayloadParser.PayloadTooLargeException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.jenkinsci.plugins.spoontrigger.Messages.REQUIRE_NOT_NULL_OR_EMPTY_S;
+import static org.jenkinsci.plugins.spoontrigger.Messages.REQUIRE_NOT_NULL_S;
+
+/**
+ * Decodes the value of a single field of an application/x-www-form-urlencoded body while it is read,
+ * so the body does not have to be held in memory. Reads end of stream if the field is missing.
+ * Other fields are skipped up to a limit, so a body padded around the field cannot be read without bound.
+ */
+public final class UrlEncodedFieldInputStream extends InputStream {
+
+    private static final int END_OF_STREAM = -1;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final InputStream in;
+    private final byte[] fieldName;
+    private final int maxSkippedLength;
+
+    private int skippedLength;
+    private boolean positioned;
+    private boolean ended;
+
+    public UrlEncodedFieldInputStream(InputStream in, String fieldName, int maxSkippedLength) {
+        checkArgument(in != null, REQUIRE_NOT_NULL_S, "in");
+        checkArgument(fieldName != null && !fieldName.isEmpty(), REQUIRE_NOT_NULL_OR_EMPTY_S, "fieldName");
+        checkArgument(maxSkippedLength > 0, "maxSkippedLength must be positive");
+
+        this.in = new BufferedInputStream(in, BUFFER_SIZE);
+        this.fieldName = fieldName.getBytes(Charsets.US_ASCII);
+        this.maxSkippedLength = maxSkippedLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!this.positioned) {
+            this.positioned = true;
+            this.ended = !this.seekField();
+        }
+        if (this.ended) {
+            return END_OF_STREAM;
+        }
+
+        int character = this.in.read();
+        switch (character) {
+            case END_OF_STREAM:
+            case '&':
+                this.ended = true;
+                return END_OF_STREAM;
+            case '+':
+                return ' ';
+            case '%':
+                return this.readEscapedByte();
+            default:
+                return character;
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        int count = 0;
+        while (count < length) {
+            int value = this.read();
+            if (value == END_OF_STREAM) {
+                break;
+            }
+            buffer[offset + count++] = (byte) value;
+        }
+        return (count == 0) ? END_OF_STREAM : count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+    private boolean seekField() throws IOException {
+        byte[] name = new byte[this.fieldName.length];
+        while (true) {
+            int nameLength = 0;
+            int character;
+            while ((character = this.readSkipped()) != END_OF_STREAM && character != '=' && character != '&') {
+                if (nameLength < name.length) {
+                    name[nameLength] = (byte) character;
+                }
+                nameLength++;
+            }
+            boolean nameMatches = nameLength == name.length && Arrays.equals(name, this.fieldName);
+
+            if (character == '=' && nameMatches) {
+                return true;
+            }
+            if (character == '=') {
+                character = this.skipValue();
+            }
+            if (character == END_OF_STREAM) {
+                return false;
+            }
+        }
+    }
+
+    private int skipValue() throws IOException {
+        int character;
+        do {
+            character = this.readSkipped();
+        } while (character != END_OF_STREAM && character != '&');
+        return character;
+    }
+
+    private int readSkipped() throws IOException {
+        int character = this.in.read();
+        if (character != END_OF_STREAM && ++this.skippedLength > this.maxSkippedLength) {
+            throw new PayloadTooLargeException(this.maxSkippedLength);
+        }
+        return character;
+    }
+
+    private int readEscapedByte() throws IOException {
+        int high = Character.digit(this.in.read(), 16);
+        int low = Character.digit(this.in.read(), 16);
+        if (high < 0 || low < 0) {
+            throw new IOException("Malformed percent-encoding in form content");
+        }
+        return (high << 4) | low;
+    }
+}
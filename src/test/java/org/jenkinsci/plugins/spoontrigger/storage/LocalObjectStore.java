@@ -0,0 +1,378 @@
+package org.jenkinsci.plugins.spoontrigger.storage;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import hudson.Util;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for an S3-compatible object store, such as a local MinIO, serving the multipart upload API on a local port.
+ * Every request must carry a valid AWS Signature Version 4 and every part a matching Content-MD5 header.
+ */
+final class LocalObjectStore implements HttpHandler {
+
+    static final String REGION = "us-east-1";
+    static final String ACCESS_KEY = "access-key";
+    static final String SECRET_KEY = "secret-key";
+
+    private static final Pattern AUTHORIZATION_PATTERN = Pattern.compile(
+            "AWS4-HMAC-SHA256 Credential=([^/]+)/(\\d{8})/([^/]+)/s3/aws4_request, SignedHeaders=([^,]+), Signature=([0-9a-f]{64})");
+    private static final String UNRESERVED_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_.~";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final Map<String, Upload> uploads = Maps.newLinkedHashMap();
+    private final Map<String, byte[]> objects = Maps.newHashMap();
+    private final Map<Integer, Integer> remainingPartFailures = Maps.newHashMap();
+    private final List<Integer> corruptedParts = Lists.newArrayList();
+    private final List<String> requests = Lists.newArrayList();
+    private final List<String> rejections = Lists.newArrayList();
+    private int uploadCount;
+
+    LocalObjectStore() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+        this.executor = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", this);
+        this.server.start();
+    }
+
+    void stop() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    String getEndpoint() {
+        return String.format("http://127.0.0.1:%d", this.server.getAddress().getPort());
+    }
+
+    ObjectStoreClient createClient() {
+        return new ObjectStoreClient(this.getEndpoint(), REGION, ACCESS_KEY, SECRET_KEY);
+    }
+
+    synchronized void failPart(int partNumber, int times) {
+        this.remainingPartFailures.put(partNumber, times);
+    }
+
+    synchronized void corruptPart(int partNumber) {
+        this.corruptedParts.add(partNumber);
+    }
+
+    synchronized String createUpload(String key) {
+        String uploadId = "upload-" + ++this.uploadCount;
+        this.uploads.put(uploadId, new Upload(key, String.format("2015-01-01T00:00:%02d.000Z", this.uploadCount)));
+        return uploadId;
+    }
+
+    synchronized void storePart(String uploadId, int partNumber, byte[] content) {
+        this.uploads.get(uploadId).parts.put(partNumber, content);
+    }
+
+    synchronized boolean isPending(String uploadId) {
+        return this.uploads.containsKey(uploadId);
+    }
+
+    synchronized byte[] getObject(String key) {
+        return this.objects.get(key);
+    }
+
+    synchronized List<String> getRequests() {
+        return Lists.newArrayList(this.requests);
+    }
+
+    synchronized List<String> getRejections() {
+        return Lists.newArrayList(this.rejections);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+            String method = exchange.getRequestMethod();
+            String rawPath = exchange.getRequestURI().getRawPath();
+            String rawQuery = exchange.getRequestURI().getRawQuery();
+            Map<String, String> query = parseQuery(rawQuery);
+
+            synchronized (this) {
+                this.requests.add(method + ' ' + rawPath + ((rawQuery == null) ? "" : '?' + rawQuery));
+            }
+
+            String rejection = verifySignature(exchange, method, rawPath, query, body);
+            if (rejection != null) {
+                this.reject(exchange, 403, "SignatureDoesNotMatch", rejection);
+                return;
+            }
+
+            String[] segments = rawPath.substring(1).split("/", 2);
+            String key = (segments.length < 2) ? null : URLDecoder.decode(segments[1], "UTF-8");
+            if ("GET".equals(method) && key == null && query.containsKey("uploads")) {
+                this.listUploads(exchange, query.get("prefix"));
+            } else if ("POST".equals(method) && query.containsKey("uploads")) {
+                send(exchange, 200, null, String.format("<InitiateMultipartUploadResult><UploadId>%s</UploadId></InitiateMultipartUploadResult>",
+                        this.createUpload(key)));
+            } else if ("PUT".equals(method) && query.containsKey("partNumber")) {
+                this.uploadPart(exchange, query.get("uploadId"), Integer.parseInt(query.get("partNumber")), body);
+            } else if ("GET".equals(method) && query.containsKey("uploadId")) {
+                this.listParts(exchange, query.get("uploadId"));
+            } else if ("POST".equals(method) && query.containsKey("uploadId")) {
+                this.complete(exchange, key, query.get("uploadId"));
+            } else if ("DELETE".equals(method) && query.containsKey("uploadId")) {
+                synchronized (this) {
+                    this.uploads.remove(query.get("uploadId"));
+                }
+                send(exchange, 204, null, null);
+            } else {
+                this.reject(exchange, 400, "InvalidRequest", method + ' ' + rawPath);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void listUploads(HttpExchange exchange, String prefix) throws IOException {
+        StringBuilder response = new StringBuilder("<ListMultipartUploadsResult>");
+        synchronized (this) {
+            for (Map.Entry<String, Upload> upload : this.uploads.entrySet()) {
+                if (upload.getValue().key.startsWith(prefix)) {
+                    response.append(String.format("<Upload><Key>%s</Key><UploadId>%s</UploadId><Initiated>%s</Initiated></Upload>",
+                            upload.getValue().key, upload.getKey(), upload.getValue().initiated));
+                }
+            }
+        }
+        send(exchange, 200, null, response.append("</ListMultipartUploadsResult>").toString());
+    }
+
+    private void uploadPart(HttpExchange exchange, String uploadId, int partNumber, byte[] body) throws IOException {
+        byte[] md5 = digest("MD5", body);
+        String contentMd5 = exchange.getRequestHeaders().getFirst("Content-MD5");
+        if (!BaseEncoding.base64().encode(md5).equals(contentMd5)) {
+            this.reject(exchange, 400, "BadDigest", "Content-MD5 of part " + partNumber + " does not match its content");
+            return;
+        }
+
+        boolean corrupted;
+        synchronized (this) {
+            Integer remainingFailures = this.remainingPartFailures.get(partNumber);
+            if (remainingFailures != null && remainingFailures > 0) {
+                this.remainingPartFailures.put(partNumber, remainingFailures - 1);
+                send(exchange, 500, null, "<Error><Code>InternalError</Code></Error>");
+                return;
+            }
+
+            Upload upload = this.uploads.get(uploadId);
+            if (upload == null) {
+                send(exchange, 404, null, "<Error><Code>NoSuchUpload</Code></Error>");
+                return;
+            }
+            upload.parts.put(partNumber, body);
+            corrupted = this.corruptedParts.contains(partNumber);
+        }
+
+        String eTag = corrupted ? Util.toHexString(digest("MD5", new byte[]{1})) : Util.toHexString(md5);
+        send(exchange, 200, '"' + eTag + '"', null);
+    }
+
+    private void listParts(HttpExchange exchange, String uploadId) throws IOException {
+        StringBuilder response = new StringBuilder("<ListPartsResult>");
+        synchronized (this) {
+            Upload upload = this.uploads.get(uploadId);
+            if (upload == null) {
+                send(exchange, 404, null, "<Error><Code>NoSuchUpload</Code></Error>");
+                return;
+            }
+
+            for (Map.Entry<Integer, byte[]> part : upload.parts.entrySet()) {
+                response.append(String.format("<Part><PartNumber>%d</PartNumber><ETag>\"%s\"</ETag><Size>%d</Size></Part>",
+                        part.getKey(), Util.toHexString(digest("MD5", part.getValue())), part.getValue().length));
+            }
+        }
+        send(exchange, 200, null, response.append("<IsTruncated>false</IsTruncated></ListPartsResult>").toString());
+    }
+
+    private void complete(HttpExchange exchange, String key, String uploadId) throws IOException {
+        synchronized (this) {
+            Upload upload = this.uploads.remove(uploadId);
+            if (upload == null) {
+                send(exchange, 404, null, "<Error><Code>NoSuchUpload</Code></Error>");
+                return;
+            }
+
+            ByteArrayOutputStream object = new ByteArrayOutputStream();
+            for (byte[] part : upload.parts.values()) {
+                object.write(part);
+            }
+            this.objects.put(key, object.toByteArray());
+        }
+        send(exchange, 200, null, "<CompleteMultipartUploadResult><ETag>\"object-etag\"</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private void reject(HttpExchange exchange, int status, String code, String reason) throws IOException {
+        synchronized (this) {
+            this.rejections.add(code + ": " + reason);
+        }
+        send(exchange, status, null, String.format("<Error><Code>%s</Code></Error>", code));
+    }
+
+    private static void send(HttpExchange exchange, int status, String eTag, String body) throws IOException {
+        if (eTag != null) {
+            exchange.getResponseHeaders().set("ETag", eTag);
+        }
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        byte[] content = body.getBytes(Charsets.UTF_8);
+        exchange.sendResponseHeaders(status, content.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Recomputes the signature from the request as received, independently of {@link ObjectStoreClient}.
+     *
+     * @return the reason the request is rejected, or null if the signature is valid
+     */
+    static String verifySignature(HttpExchange exchange, String method, String rawPath, Map<String, String> query, byte[] body) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        Matcher matcher = AUTHORIZATION_PATTERN.matcher(authorization == null ? "" : authorization);
+        if (!matcher.matches()) {
+            return "malformed Authorization header: " + authorization;
+        }
+
+        String amzDate = exchange.getRequestHeaders().getFirst("x-amz-date");
+        String date = matcher.group(2);
+        if (!ACCESS_KEY.equals(matcher.group(1)) || !REGION.equals(matcher.group(3)) || amzDate == null || !amzDate.startsWith(date)) {
+            return "wrong credential scope: " + authorization;
+        }
+
+        String payloadHash = Util.toHexString(digest("SHA-256", body));
+        if (!payloadHash.equals(exchange.getRequestHeaders().getFirst("x-amz-content-sha256"))) {
+            return "x-amz-content-sha256 does not match the payload";
+        }
+
+        List<String> signedHeaders = Lists.newArrayList(matcher.group(4).split(";"));
+        if (!signedHeaders.contains("host") || !signedHeaders.contains("x-amz-date") || !signedHeaders.contains("x-amz-content-sha256")) {
+            return "required headers are not signed: " + signedHeaders;
+        }
+
+        StringBuilder canonicalHeaders = new StringBuilder();
+        for (String header : signedHeaders) {
+            String value = exchange.getRequestHeaders().getFirst(header);
+            if (value == null) {
+                return "signed header is missing: " + header;
+            }
+            canonicalHeaders.append(header).append(':').append(value.trim()).append('\n');
+        }
+
+        SortedMap<String, String> encodedQuery = Maps.newTreeMap();
+        for (Map.Entry<String, String> parameter : query.entrySet()) {
+            encodedQuery.put(uriEncode(parameter.getKey()), uriEncode(parameter.getValue()));
+        }
+        StringBuilder canonicalQuery = new StringBuilder();
+        for (Map.Entry<String, String> parameter : encodedQuery.entrySet()) {
+            if (canonicalQuery.length() > 0) {
+                canonicalQuery.append('&');
+            }
+            canonicalQuery.append(parameter.getKey()).append('=').append(parameter.getValue());
+        }
+
+        String canonicalRequest = method + '\n' + rawPath + '\n' + canonicalQuery + '\n' + canonicalHeaders + '\n'
+                + matcher.group(4) + '\n' + payloadHash;
+        String scope = date + '/' + REGION + "/s3/aws4_request";
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + '\n' + scope + '\n'
+                + Util.toHexString(digest("SHA-256", canonicalRequest.getBytes(Charsets.UTF_8)));
+
+        byte[] signingKey = hmac(("AWS4" + SECRET_KEY).getBytes(Charsets.UTF_8), date);
+        signingKey = hmac(signingKey, REGION);
+        signingKey = hmac(signingKey, "s3");
+        signingKey = hmac(signingKey, "aws4_request");
+        String signature = Util.toHexString(hmac(signingKey, stringToSign));
+        return signature.equals(matcher.group(5)) ? null : "signature does not match the canonical request:\n" + canonicalRequest;
+    }
+
+    static Map<String, String> parseQuery(String rawQuery) throws IOException {
+        Map<String, String> query = Maps.newHashMap();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+
+        for (String parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = (separator < 0) ? parameter : parameter.substring(0, separator);
+            String value = (separator < 0) ? "" : parameter.substring(separator + 1);
+            query.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return query;
+    }
+
+    private static String uriEncode(String value) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte character : value.getBytes(Charsets.UTF_8)) {
+            if (UNRESERVED_CHARACTERS.indexOf(character) >= 0) {
+                encoded.append((char) character);
+            } else {
+                encoded.append(String.format("%%%02X", character & 0xff));
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static byte[] digest(String algorithm, byte[] content) {
+        try {
+            return MessageDigest.getInstance(algorithm).digest(content);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(Charsets.UTF_8));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static final class Upload {
+        private final String key;
+        private final String initiated;
+        private final SortedMap<Integer, byte[]> parts = Collections.synchronizedSortedMap(Maps.<Integer, byte[]>newTreeMap());
+
+        Upload(String key, String initiated) {
+            this.key = key;
+            this.initiated = initiated;
+        }
+    }
+}
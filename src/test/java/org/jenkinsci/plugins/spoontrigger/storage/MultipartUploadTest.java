@@ -0,0 +1,153 @@
+package org.jenkinsci.plugins.spoontrigger.storage;
+
+import com.google.common.io.Files;
+import hudson.FilePath;
+import hudson.util.StreamTaskListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MultipartUploadTest {
+
+    private static final String BUCKET = "images";
+    private static final String KEY = "builds/image.svm";
+    private static final String PART_PATH = "PUT /" + BUCKET + "/" + KEY + "?partNumber=";
+
+    static {
+        // smallest part size the store accepts, and retries without waiting; read when MultipartUpload is initialized
+        System.setProperty(MultipartUpload.class.getName() + ".partSizeMegabytes", "5");
+        System.setProperty(MultipartUpload.class.getName() + ".retryDelayMillis", "1");
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalObjectStore store;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        this.store = new LocalObjectStore();
+
+        this.content = new byte[MultipartUpload.PART_SIZE + 1000];
+        new Random(42).nextBytes(this.content);
+    }
+
+    @After
+    public void stopStore() {
+        this.store.stop();
+    }
+
+    @Test
+    public void uploadsFileInParts() throws Exception {
+        MultipartUpload.Result result = this.upload(false);
+
+        assertEquals(2, result.getPartCount());
+        assertEquals(this.content.length, result.getSize());
+        assertEquals(0, result.getRetryCount());
+        assertEquals("object-etag", result.getETag());
+        assertArrayEquals(this.content, this.store.getObject(KEY));
+        assertEquals("[]", this.store.getRejections().toString());
+    }
+
+    @Test
+    public void retriesPartAfterServerError() throws Exception {
+        this.store.failPart(2, 1);
+
+        MultipartUpload.Result result = this.upload(false);
+
+        assertEquals(1, result.getRetryCount());
+        assertEquals(2, this.countRequests(PART_PATH + "2&"));
+        assertArrayEquals(this.content, this.store.getObject(KEY));
+    }
+
+    @Test
+    public void resumeSkipsPartsWithMatchingSizeAndMd5() throws Exception {
+        String uploadId = this.store.createUpload(KEY);
+        this.store.storePart(uploadId, 1, Arrays.copyOfRange(this.content, 0, MultipartUpload.PART_SIZE));
+        this.store.storePart(uploadId, 2, new byte[this.content.length - MultipartUpload.PART_SIZE]);
+
+        MultipartUpload.Result result = this.upload(true);
+
+        assertEquals(uploadId, result.getUploadId());
+        assertEquals(1, result.getResumedPartCount());
+        assertEquals(0, this.countRequests(PART_PATH + "1&"));
+        assertEquals(1, this.countRequests(PART_PATH + "2&"));
+        assertArrayEquals(this.content, this.store.getObject(KEY));
+    }
+
+    @Test
+    public void abortsFailedUploadThatIsNotResumable() throws Exception {
+        this.store.failPart(2, Integer.MAX_VALUE);
+
+        try {
+            this.upload(false);
+            fail("upload of a part that always fails must fail");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("status 500"));
+        }
+
+        assertEquals(MultipartUpload.MAX_ATTEMPTS, this.countRequests(PART_PATH + "2&"));
+        assertEquals(1, this.countRequests("DELETE /" + BUCKET + "/" + KEY + "?uploadId=upload-1"));
+        assertFalse(this.store.isPending("upload-1"));
+    }
+
+    @Test
+    public void keepsFailedResumableUploadOpen() throws Exception {
+        this.store.failPart(2, Integer.MAX_VALUE);
+
+        try {
+            this.upload(true);
+            fail("upload of a part that always fails must fail");
+        } catch (IOException ex) {
+            // expected
+        }
+
+        assertEquals(0, this.countRequests("DELETE "));
+        assertTrue(this.store.isPending("upload-1"));
+    }
+
+    @Test
+    public void failsWhenPartETagDoesNotMatchMd5() throws Exception {
+        this.store.corruptPart(1);
+
+        try {
+            this.upload(false);
+            fail("part whose ETag does not match its MD5 digest must fail the upload");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("corrupted in transfer"));
+        }
+
+        assertEquals(MultipartUpload.MAX_ATTEMPTS, this.countRequests(PART_PATH + "1&"));
+        assertFalse(this.store.isPending("upload-1"));
+    }
+
+    private MultipartUpload.Result upload(boolean resumable) throws Exception {
+        File file = this.folder.newFile();
+        Files.write(this.content, file);
+        return MultipartUpload.upload(new FilePath(file), this.store.createClient(), BUCKET, KEY, resumable, StreamTaskListener.fromStdout());
+    }
+
+    private int countRequests(String prefix) {
+        int count = 0;
+        for (String request : this.store.getRequests()) {
+            if (request.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,86 @@
+package org.jenkinsci.plugins.spoontrigger.storage;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ObjectStoreClientTest {
+
+    private static final String BUCKET = "images";
+    private static final String KEY = "builds/my image+1.svm";
+
+    private LocalObjectStore store;
+
+    @Before
+    public void startStore() throws Exception {
+        this.store = new LocalObjectStore();
+    }
+
+    @After
+    public void stopStore() {
+        this.store.stop();
+    }
+
+    @Test
+    public void encodesAllButUnreservedCharacters() {
+        assertEquals("a%20b/c~%2A%2B", ObjectStoreClient.encode("a b/c~*+", true));
+        assertEquals("a%20b%2Fc~%2A%2B", ObjectStoreClient.encode("a b/c~*+", false));
+        assertEquals("%C5%BC", ObjectStoreClient.encode("\u017c", false));
+    }
+
+    @Test
+    public void signsRequestsTheStoreAccepts() throws Exception {
+        ObjectStoreClient client = this.store.createClient();
+
+        ObjectStoreClient.Response initiated = client.execute("POST", BUCKET, KEY, ImmutableMap.of("uploads", ""), new byte[0], 0, null);
+        ObjectStoreClient.Response listed = client.execute("GET", BUCKET, null, ImmutableMap.of("uploads", "", "prefix", "builds/my image"));
+
+        assertEquals(initiated.getBodyAsString(), 200, initiated.getStatus());
+        assertEquals(listed.getBodyAsString(), 200, listed.getStatus());
+        assertTrue(listed.getBodyAsString(), listed.getBodyAsString().contains("<Key>" + KEY + "</Key>"));
+        assertEquals("[]", this.store.getRejections().toString());
+    }
+
+    @Test
+    public void sendsCanonicalQuery() throws Exception {
+        ObjectStoreClient client = this.store.createClient();
+
+        client.execute("POST", BUCKET, KEY, ImmutableMap.of("uploads", ""), new byte[0], 0, null);
+        client.execute("GET", BUCKET, null, ImmutableMap.of("uploads", "", "prefix", "builds/my image"));
+
+        List<String> requests = this.store.getRequests();
+        assertEquals("POST /images/builds/my%20image%2B1.svm?uploads=", requests.get(0));
+        assertEquals("GET /images?prefix=builds%2Fmy%20image&uploads=", requests.get(1));
+    }
+
+    @Test
+    public void storeRejectsWrongSecret() throws Exception {
+        ObjectStoreClient client = new ObjectStoreClient(this.store.getEndpoint(), LocalObjectStore.REGION,
+                LocalObjectStore.ACCESS_KEY, "wrong-secret");
+
+        ObjectStoreClient.Response response = client.execute("POST", BUCKET, KEY, ImmutableMap.of("uploads", ""), new byte[0], 0, null);
+
+        assertEquals(403, response.getStatus());
+        assertTrue(this.store.getRejections().get(0).startsWith("SignatureDoesNotMatch"));
+    }
+
+    @Test
+    public void storeRejectsMismatchedContentMd5() throws Exception {
+        ObjectStoreClient client = this.store.createClient();
+        String uploadId = this.store.createUpload(KEY);
+        byte[] part = "part content".getBytes(Charsets.UTF_8);
+
+        ObjectStoreClient.Response response = client.execute("PUT", BUCKET, KEY,
+                ImmutableMap.of("partNumber", "1", "uploadId", uploadId), part, part.length, "1B2M2Y8AsgTpgAmY7PhCfg==");
+
+        assertEquals(400, response.getStatus());
+        assertTrue(this.store.getRejections().get(0).startsWith("BadDigest"));
+    }
+}